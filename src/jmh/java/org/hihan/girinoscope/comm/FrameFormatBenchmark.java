@@ -0,0 +1,66 @@
+package org.hihan.girinoscope.comm;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding of a frame for each known device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FrameFormatBenchmark {
+
+    @Param({"classic", "soft-girino", "stm32f103mm"})
+    public String deviceId;
+
+    private FrameFormat frameFormat;
+
+    private byte[] data;
+
+    private int[] values;
+
+    private int[][] channels;
+
+    @Setup
+    public void setUp() {
+        for (Device device : Device.DEVICES) {
+            if (device.id.equals(deviceId)) {
+                frameFormat = device.getFrameFormat();
+            }
+        }
+        if (frameFormat == null) {
+            throw new IllegalArgumentException("Unknown device: " + deviceId);
+        }
+        data = new byte[frameFormat.getFrameSize()];
+        new Random(0).nextBytes(data);
+        values = new int[frameFormat.sampleCount];
+        channels = new int[2][frameFormat.sampleCount / 2];
+    }
+
+    @Benchmark
+    public int[] readValues() {
+        frameFormat.readValues(data, values);
+        return values;
+    }
+
+    @Benchmark
+    public int[][] readDualChannels() {
+        frameFormat.readChannels(data, channels);
+        return channels;
+    }
+}
@@ -0,0 +1,57 @@
+package org.hihan.girinoscope.ui;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Construction and layout of an axis, as done on each time frame change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AxisBenchmark {
+
+    private final Font font = Font.decode(Font.MONOSPACED);
+
+    private Graphics2D graphics;
+
+    @Setup
+    public void setUp() {
+        graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public Axis createTimeAxis() {
+        Axis axis = new Axis(0, 6.4, "#,##0.0 ms");
+        axis.complete(graphics, font);
+        return axis;
+    }
+
+    @Benchmark
+    public Axis createVoltageAxis() {
+        Axis axis = new Axis.Builder().build();
+        axis.complete(graphics, font);
+        return axis;
+    }
+}
@@ -0,0 +1,52 @@
+package org.hihan.girinoscope.ui;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CSV export of a frame (in memory, to leave the file system out).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CsvExportBenchmark {
+
+    @Param({"1", "2"})
+    public int channelCount;
+
+    private int[][] channels;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+        channels = new int[channelCount][1280 / channelCount];
+        for (int[] channel : channels) {
+            for (int i = 0; i < channel.length; ++i) {
+                channel[i] = random.nextInt(256);
+            }
+        }
+    }
+
+    @Benchmark
+    public String export() throws IOException {
+        StringWriter writer = new StringWriter(8192);
+        CsvExport.write(channels, writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package org.hihan.girinoscope.ui;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.hihan.girinoscope.comm.Device;
+import org.hihan.girinoscope.comm.FrameFormat;
+import org.hihan.girinoscope.comm.Girino;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Off-screen painting of a new frame, decoding included. The traces are
+ * rendered synchronously instead of in their own thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GraphPaneBenchmark {
+
+    @Param({"640x400", "1024x600", "1920x1080"})
+    public String size;
+
+    @Param({"SINGLE", "DUAL", "XY"})
+    public Girino.ChannelCompositionMode channelCompositionMode;
+
+    private GraphPane graphPane;
+
+    private BufferedImage image;
+
+    private Graphics2D graphics;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int height = Integer.parseInt(dimensions[1]);
+
+        FrameFormat frameFormat = Device.createClassic().getFrameFormat();
+        int[] values = new int[frameFormat.sampleCount];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = (int) Math.round(frameFormat.sampleMaxValue * (0.5 + 0.4 * Math.sin(i / 20.0)));
+        }
+        data = new byte[frameFormat.getFrameSize()];
+        frameFormat.writeValues(values, data);
+
+        graphPane = new GraphPane(Runnable::run);
+        graphPane.setFrameFormat(frameFormat);
+        graphPane.setChannelCompositionMode(channelCompositionMode);
+        graphPane.setXCoordinateSystem(new Axis(0, 10, "#,##0 ms"));
+        graphPane.setYCoordinateSystem(new Axis.Builder().build());
+        graphPane.setTriggerEnabled(true);
+        graphPane.setThreshold(frameFormat.sampleMaxValue / 2);
+        graphPane.setWaitDuration(frameFormat.sampleCount / 2);
+        graphPane.setSize(width, height);
+
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        graphPane.setData(data);
+        graphPane.paintComponent(graphics);
+        return image;
+    }
+}
@@ -0,0 +1,567 @@
+package org.hihan.girinoscope.comm;
+
+import com.fazecast.jSerialComm.SerialPort;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.hihan.girinoscope.utils.Metrics;
+import org.hihan.girinoscope.utils.SpscQueue;
+
+/**
+ * Acquire frames from a Girino in a dedicated thread, the only one talking to
+ * it once given to the engine. The acquisition is configured through
+ * immutable snapshots, a new one (with a new version) replacing the previous
+ * one at any time. A new device or endpoint implies a new connection, whereas
+ * new parameters are simply applied between two frames. The acquired frames
+ * are delivered through a lock-free queue, the engine never waiting for its
+ * consumer: a frame which doesn't fit in the queue is simply dropped (and
+ * counted as coalesced).
+ */
+public class AcquisitionEngine {
+
+    private static final Logger LOGGER = Logger.getLogger(AcquisitionEngine.class.getName());
+
+    private static final int QUEUE_CAPACITY = 16;
+
+    /*
+     * The frames in the queue, plus the one being acquired and a few ones
+     * held by the consumer.
+     */
+    private static final int FRAME_POOL_CAPACITY = QUEUE_CAPACITY + 4;
+
+    /*
+     * How long a parameter change could wait for the current frame before
+     * interrupting it. Waiting spares us a lost frame for each step of a rule
+     * being dragged, but the trigger could never fire with the current
+     * parameters.
+     */
+    private static final long PARAMETER_UPDATE_LATENCY = TimeUnit.MILLISECONDS.toNanos(500);
+
+    /*
+     * How long we wait for a device to get connected, its setup delay and the
+     * probing of a silent device included.
+     */
+    private static final long CONNECTION_TIMEOUT = TimeUnit.SECONDS.toNanos(15);
+
+    /*
+     * Each engine having its own thread, we count them to name the threads.
+     */
+    private static final AtomicInteger ENGINE_COUNT = new AtomicInteger();
+
+    private static final ScheduledExecutorService WAKE_UP_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Acquisition engine wake-up");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A snapshot of what the acquisition is done with.
+     */
+    public static final class Configuration {
+
+        /**
+         * Increasing with each new configuration of an engine.
+         */
+        public final long version;
+
+        public final Device device;
+
+        /**
+         * The serial port to connect to, or null if the device is reached
+         * through a transport.
+         */
+        public final SerialPort port;
+
+        public final Transport transport;
+
+        public final Map<Girino.Parameter, Integer> parameters;
+
+        private Configuration(long version, Device device, SerialPort port, Transport transport, Map<Girino.Parameter, Integer> parameters) {
+            this.version = version;
+            this.device = device;
+            this.port = port;
+            this.transport = transport;
+            Map<Girino.Parameter, Integer> parametersCopy = new EnumMap<>(Girino.Parameter.class);
+            parametersCopy.putAll(parameters);
+            this.parameters = Collections.unmodifiableMap(parametersCopy);
+        }
+
+        /**
+         * @return true if both configurations only differ by their
+         * parameters.
+         */
+        public boolean hasSameConnection(Configuration other) {
+            return device == other.device
+                    && Objects.equals(port, other.port)
+                    && transport == other.transport;
+        }
+
+        public String getEndpointName() {
+            if (port != null) {
+                return port.getSystemPortName();
+            } else if (transport != null) {
+                return transport.getClass().getSimpleName();
+            } else {
+                return "no port";
+            }
+        }
+    }
+
+    /**
+     * Notified, from the engine thread, of the acquisition progress.
+     */
+    public interface Listener {
+
+        /**
+         * Called before connecting to the device with a configuration requiring
+         * a new connection, a simple parameter change not doing so.
+         */
+        default void connecting(Configuration configuration) {
+        }
+
+        /**
+         * Called once connected, before acquiring the frames.
+         */
+        default void acquiring(Configuration configuration) {
+        }
+
+        /**
+         * Called each time a frame has been queued, for a consumer waiting for
+         * it.
+         */
+        default void frameQueued(Configuration configuration) {
+        }
+
+        /**
+         * Called when the acquisition is over, because completed, stopped or
+         * failed.
+         *
+         * @param error The failure cause, null otherwise.
+         */
+        default void terminated(Configuration configuration, Exception error) {
+        }
+    }
+
+    private final Girino girino;
+
+    private final Listener listener;
+
+    private final SpscQueue<Frame> frames = new SpscQueue<>(QUEUE_CAPACITY);
+
+    private final AtomicLong lastVersion = new AtomicLong();
+
+    private volatile Configuration configuration;
+
+    private volatile boolean stopRequested;
+
+    private volatile long acquiredFrameCount;
+
+    /*
+     * The engine state, guarded by this.
+     */
+    private Thread thread;
+
+    private boolean running;
+
+    private boolean repeated;
+
+    private boolean closed;
+
+    /*
+     * True while the engine thread could be interrupted, that is while it
+     * waits for a frame.
+     */
+    private boolean interruptible;
+
+    /*
+     * True while the engine thread connects to a device, which could be
+     * interrupted too.
+     */
+    private boolean connecting;
+
+    private boolean connectionTimedOut;
+
+    private long waitStartTime;
+
+    private boolean wakeUpScheduled;
+
+    /*
+     * The configuration of the frame being waited for or of the connection
+     * being established, null otherwise.
+     */
+    private Configuration appliedConfiguration;
+
+    /*
+     * Only used by the engine thread.
+     */
+    private Device connectedDevice;
+
+    private FramePool framePool;
+
+    /**
+     * @param girino The Girino to acquire from, which shall not be used by
+     * anything else from now on.
+     */
+    public AcquisitionEngine(Girino girino, Listener listener) {
+        this.girino = girino;
+        this.listener = listener;
+    }
+
+    public void configure(Device device, SerialPort port, Map<Girino.Parameter, Integer> parameters) {
+        setConfiguration(new Configuration(lastVersion.incrementAndGet(), device, port, null, parameters));
+    }
+
+    /**
+     * Same as {@link #configure(Device, SerialPort, Map)} with an already
+     * opened transport, a {@link SimulatedGirino} per instance.
+     */
+    public void configure(Device device, Transport transport, Map<Girino.Parameter, Integer> parameters) {
+        setConfiguration(new Configuration(lastVersion.incrementAndGet(), device, null, transport, parameters));
+    }
+
+    private synchronized void setConfiguration(Configuration newConfiguration) {
+        configuration = newConfiguration;
+        wakeUpIfOutdated();
+    }
+
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Start acquiring with the current configuration, which will be followed
+     * by the engine if changed afterward.
+     *
+     * @param repeated false to acquire a single frame.
+     */
+    public synchronized void start(boolean repeated) {
+        if (closed) {
+            throw new IllegalStateException("Closed engine");
+        } else if (running) {
+            throw new IllegalStateException("Already acquiring");
+        } else if (configuration == null) {
+            throw new IllegalStateException("No configuration");
+        }
+        this.repeated = repeated;
+        stopRequested = false;
+        running = true;
+        if (thread == null) {
+            thread = new Thread(this::run, "Acquisition engine " + ENGINE_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Ask the acquisition to stop, without waiting for it.
+     */
+    public void stop() {
+        stopRequested = true;
+        wakeUp();
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stop the engine for good and disconnect the Girino.
+     *
+     * @return false if the engine thread has not terminated in time.
+     */
+    public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+        Thread engineThread;
+        synchronized (this) {
+            closed = true;
+            stopRequested = true;
+            engineThread = thread;
+            if (interruptible || connecting) {
+                engineThread.interrupt();
+            }
+            notifyAll();
+        }
+        if (engineThread != null) {
+            engineThread.join(unit.toMillis(timeout));
+            return !engineThread.isAlive();
+        } else {
+            return true;
+        }
+    }
+
+    /**
+     * Take the oldest acquired frame, to be released by the caller once no
+     * longer used. There shall be a single thread polling the frames.
+     *
+     * @return The frame, or null if none is available.
+     */
+    public Frame poll() {
+        return frames.poll();
+    }
+
+    /**
+     * @return The number of valid frames acquired since this engine creation.
+     */
+    public long getAcquiredFrameCount() {
+        return acquiredFrameCount;
+    }
+
+    /**
+     * @see Girino#getBadFrameCount()
+     */
+    public long getBadFrameCount() {
+        return girino.getBadFrameCount();
+    }
+
+    /*
+     * Wake the engine thread up if waiting for a frame, the trigger event
+     * could be a long time coming, or connecting to a device.
+     */
+    private synchronized void wakeUp() {
+        if (interruptible || connecting) {
+            thread.interrupt();
+        }
+    }
+
+    /*
+     * Wake the engine thread up if the frame it waits for is acquired with an
+     * outdated configuration: at once for a new connection, once the frame has
+     * been awaited long enough for new parameters. A connection being
+     * established is only interrupted for another one, new parameters being
+     * applied once connected.
+     */
+    private synchronized void wakeUpIfOutdated() {
+        if (connecting) {
+            if (!appliedConfiguration.hasSameConnection(configuration)) {
+                thread.interrupt();
+            }
+        } else if (interruptible && configuration != appliedConfiguration) {
+            long delay = appliedConfiguration.hasSameConnection(configuration)
+                    ? waitStartTime + PARAMETER_UPDATE_LATENCY - System.nanoTime()
+                    : 0;
+            if (delay > 0) {
+                if (!wakeUpScheduled) {
+                    wakeUpScheduled = true;
+                    WAKE_UP_SCHEDULER.schedule(() -> {
+                        synchronized (this) {
+                            wakeUpScheduled = false;
+                            wakeUpIfOutdated();
+                        }
+                    }, delay, TimeUnit.NANOSECONDS);
+                }
+            } else {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /*
+     * Called with the configuration used to acquire a frame before waiting
+     * for it, then with null once done.
+     */
+    private synchronized void setInterruptible(Configuration acquisitionConfiguration) {
+        appliedConfiguration = acquisitionConfiguration;
+        interruptible = acquisitionConfiguration != null;
+        if (interruptible) {
+            waitStartTime = System.nanoTime();
+            // The configuration could have changed since the engine read it.
+            wakeUpIfOutdated();
+        }
+    }
+
+    /*
+     * Called with the configuration to connect with, then with null once
+     * done. Returns true if the connection has timed out in between.
+     */
+    private synchronized boolean setConnecting(Configuration connectionConfiguration) {
+        boolean timedOut = connectionTimedOut;
+        appliedConfiguration = connectionConfiguration;
+        connecting = connectionConfiguration != null;
+        connectionTimedOut = false;
+        if (connecting && stopRequested) {
+            thread.interrupt();
+        } else if (connecting) {
+            wakeUpIfOutdated();
+        }
+        return timedOut;
+    }
+
+    private synchronized void timeOutConnection(Configuration connectionConfiguration) {
+        if (connecting && appliedConfiguration == connectionConfiguration) {
+            connectionTimedOut = true;
+            thread.interrupt();
+        }
+    }
+
+    private synchronized boolean awaitStart() {
+        while (!running && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // Never interrupted when not acquiring.
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !closed;
+    }
+
+    private void run() {
+        try {
+            while (awaitStart()) {
+                Exception error = null;
+                try {
+                    acquire();
+                } catch (Exception e) {
+                    error = e;
+                }
+                try {
+                    girino.stopStreaming();
+                } catch (IOException | InterruptedException e) {
+                    LOGGER.log(Level.WARNING, "When stopping the streaming.", e);
+                }
+                synchronized (this) {
+                    running = false;
+                }
+                listener.terminated(configuration, error);
+            }
+        } finally {
+            try {
+                girino.disconnect();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "When disconnecting from Girino.", e);
+            }
+        }
+    }
+
+    private void acquire() throws Exception {
+        boolean repeatedAcquisition;
+        synchronized (this) {
+            repeatedAcquisition = repeated;
+        }
+        Configuration previousConfiguration = null;
+        while (!stopRequested) {
+            Configuration currentConfiguration = configuration;
+            if (previousConfiguration == null || !previousConfiguration.hasSameConnection(currentConfiguration)) {
+                if (!connect(currentConfiguration)) {
+                    // Interrupted by a stop or a new connection.
+                    previousConfiguration = null;
+                    continue;
+                }
+                listener.acquiring(currentConfiguration);
+            } else if (previousConfiguration != currentConfiguration) {
+                LOGGER.log(Level.FINE, "Update parameters to {0}.", currentConfiguration.parameters);
+                girino.updateParameters(currentConfiguration.parameters);
+            }
+            previousConfiguration = currentConfiguration;
+            /*
+             * When acquiring in loop, a device able to stream its frames spares
+             * us a stop / start round-trip for each of them.
+             */
+            boolean streamed = repeatedAcquisition && currentConfiguration.device.hasFeature(Device.Feature.STREAMING);
+            if (acquireFrame(currentConfiguration, streamed) && !repeatedAcquisition) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * Return false if the connection has been interrupted by a stop or a new
+     * configuration, the Girino being left disconnected.
+     */
+    private boolean connect(Configuration newConfiguration) throws Exception {
+        listener.connecting(newConfiguration);
+        Device device = newConfiguration.device;
+        if (connectedDevice != null && connectedDevice != device) {
+            girino.disconnect();
+        }
+        connectedDevice = device;
+        ScheduledFuture<?> timeout = WAKE_UP_SCHEDULER.schedule(
+                () -> timeOutConnection(newConfiguration), CONNECTION_TIMEOUT, TimeUnit.NANOSECONDS);
+        boolean timedOut = false;
+        try {
+            setConnecting(newConfiguration);
+            try {
+                if (newConfiguration.transport != null) {
+                    girino.connect(device, newConfiguration.transport, newConfiguration.parameters);
+                } else {
+                    girino.connect(device, newConfiguration.port, newConfiguration.parameters);
+                }
+            } finally {
+                timeout.cancel(false);
+                timedOut = setConnecting(null);
+                // An interruption could have come too late to be useful.
+                Thread.interrupted();
+            }
+        } catch (Exception e) {
+            girino.disconnect();
+            connectedDevice = null;
+            if (timedOut) {
+                throw new TimeoutException("No Girino detected on " + newConfiguration.getEndpointName());
+            } else if (e instanceof InterruptedException || stopRequested || !newConfiguration.hasSameConnection(configuration)) {
+                // The serial library could turn an interruption into an error.
+                LOGGER.log(Level.FINE, "Connection to {0} interrupted.", newConfiguration.getEndpointName());
+                return false;
+            } else {
+                throw e;
+            }
+        }
+
+        FrameFormat frameFormat = device.getFrameFormat();
+        if (framePool == null || framePool.getFrameSize() != frameFormat.getFrameSize()) {
+            framePool = new FramePool(frameFormat, FRAME_POOL_CAPACITY);
+        }
+        return true;
+    }
+
+    /*
+     * Return true if a valid frame has been acquired.
+     */
+    private boolean acquireFrame(Configuration acquisitionConfiguration, boolean streamed) throws Exception {
+        Frame frame = framePool.acquire();
+        boolean acquired = false;
+        try {
+            setInterruptible(acquisitionConfiguration);
+            try {
+                acquired = streamed
+                        ? girino.acquireStreamedData(frame.getData())
+                        : girino.acquireData(frame.getData());
+            } finally {
+                setInterruptible(null);
+                // An interruption could have come too late to be useful.
+                Thread.interrupted();
+            }
+        } catch (InterruptedException e) {
+            // Woken up by a stop or a new configuration the caller will handle.
+            return false;
+        } finally {
+            if (!acquired) {
+                frame.release();
+            }
+        }
+        if (!acquired) {
+            // A corrupted frame, already dropped and counted by the Girino.
+            return false;
+        }
+        frame.setTimestamp(System.nanoTime());
+        ++acquiredFrameCount;
+        if (frames.offer(frame)) {
+            listener.frameQueued(acquisitionConfiguration);
+        } else {
+            frame.release();
+            Metrics.COALESCED_FRAMES.increment();
+        }
+        return true;
+    }
+}
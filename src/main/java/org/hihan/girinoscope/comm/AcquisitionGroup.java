@@ -0,0 +1,256 @@
+package org.hihan.girinoscope.comm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.hihan.girinoscope.utils.Metrics;
+
+/**
+ * Acquire continuously from several devices at once, each one through its own
+ * {@link AcquisitionSession} (and thread), and align their frames on their
+ * host timestamps. Frames from all the sessions received within a given
+ * tolerance are delivered together, the ones without any match being dropped.
+ * <p>
+ * The alignment is only as good as the host timestamps: the trigger events of
+ * the devices are not synchronized, but frames acquired closely enough are
+ * expected to show the same moment.
+ */
+public class AcquisitionGroup {
+
+    /*
+     * How many frames could wait for their counterparts in each session, and
+     * how many aligned frame sets could wait to be delivered.
+     */
+    private static final int MAX_PENDING_FRAMES = 16;
+
+    /**
+     * Receive the aligned frames in order, on the acquisition thread of one of
+     * the sessions, never two at once.
+     */
+    public interface Listener {
+
+        /**
+         * @param frames A frame per session, in the sessions order, each one
+         * to be released by the listener once no longer used.
+         */
+        void framesAligned(Frame[] frames);
+    }
+
+    private final List<AcquisitionSession> sessions;
+
+    private final long tolerance;
+
+    private final Listener listener;
+
+    /*
+     * The frames waiting for their counterparts, one queue per session, and
+     * the aligned ones waiting to be delivered, guarded by this.
+     */
+    private final List<Deque<Frame>> pendingFrames = new ArrayList<>();
+
+    private final Deque<Frame[]> alignedFrameSets = new ArrayDeque<>();
+
+    /*
+     * True while a thread delivers the aligned frames, the other ones only
+     * queueing theirs.
+     */
+    private boolean delivering;
+
+    private boolean active;
+
+    private long unalignedFrameCount;
+
+    /**
+     * @param sessions The configured sessions, which stay owned by the caller.
+     * @param tolerance The largest difference between the timestamps of
+     * aligned frames.
+     */
+    public AcquisitionGroup(List<AcquisitionSession> sessions, long tolerance, TimeUnit unit, Listener listener) {
+        if (sessions.isEmpty()) {
+            throw new IllegalArgumentException("No session");
+        }
+        this.sessions = new ArrayList<>(sessions);
+        this.tolerance = unit.toNanos(tolerance);
+        this.listener = listener;
+        for (int i = 0; i < sessions.size(); ++i) {
+            pendingFrames.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Start capturing from all the sessions. If one of them fails to start,
+     * the already started ones are cancelled.
+     */
+    public void start() {
+        synchronized (this) {
+            releasePendingFrames();
+            active = true;
+        }
+        for (int i = 0; i < sessions.size(); ++i) {
+            int index = i;
+            try {
+                sessions.get(i).start(frame -> frameAcquired(index, frame));
+            } catch (RuntimeException e) {
+                cancel();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Ask all the captures to stop, without waiting for them. The frames not
+     * delivered yet are released.
+     */
+    public void cancel() {
+        synchronized (this) {
+            active = false;
+            releasePendingFrames();
+        }
+        for (AcquisitionSession session : sessions) {
+            session.cancel();
+        }
+    }
+
+    /**
+     * Wait for all the captures to be over.
+     *
+     * Once all over, the frames still waiting for their counterparts are
+     * released.
+     *
+     * @return false if a capture is still going on after the timeout.
+     * @throws ExecutionException If an acquisition has failed.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        ExecutionException error = null;
+        for (AcquisitionSession session : sessions) {
+            try {
+                if (!session.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    return false;
+                }
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        synchronized (this) {
+            active = false;
+            releasePendingFrames();
+        }
+        if (error != null) {
+            throw error;
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of frames dropped for lack of counterparts.
+     */
+    public synchronized long getUnalignedFrameCount() {
+        return unalignedFrameCount;
+    }
+
+    /*
+     * The aligned frames are delivered outside the lock, by a single thread at
+     * a time to keep them in order: the one finding nobody delivering them.
+     */
+    void frameAcquired(int index, Frame frame) {
+        synchronized (this) {
+            if (!active) {
+                frame.release();
+                return;
+            }
+            Deque<Frame> frames = pendingFrames.get(index);
+            frames.addLast(frame);
+            if (frames.size() > MAX_PENDING_FRAMES) {
+                frames.removeFirst().release();
+                ++unalignedFrameCount;
+            }
+            alignedFrameSets.addAll(align());
+            // The listener being too slow, like a consumer of a session.
+            while (alignedFrameSets.size() > MAX_PENDING_FRAMES) {
+                for (Frame alignedFrame : alignedFrameSets.removeFirst()) {
+                    alignedFrame.release();
+                }
+                Metrics.COALESCED_FRAMES.increment();
+            }
+            if (delivering) {
+                return;
+            }
+            delivering = true;
+        }
+        try {
+            while (true) {
+                Frame[] alignedFrames;
+                synchronized (this) {
+                    alignedFrames = alignedFrameSets.pollFirst();
+                    if (alignedFrames == null) {
+                        delivering = false;
+                        return;
+                    }
+                }
+                listener.framesAligned(alignedFrames);
+            }
+        } catch (RuntimeException | Error e) {
+            // Another thread will take over.
+            synchronized (this) {
+                delivering = false;
+            }
+            throw e;
+        }
+    }
+
+    /*
+     * The frames of each session being ordered, the oldest first frame could
+     * only be aligned with the other first ones. If it is too old for them, it
+     * will be too old for the next ones too.
+     */
+    private List<Frame[]> align() {
+        List<Frame[]> alignedFrameSets = new ArrayList<>();
+        while (pendingFrames.stream().noneMatch(Deque::isEmpty)) {
+            Deque<Frame> oldestFrames = pendingFrames.get(0);
+            long oldestTimestamp = oldestFrames.peekFirst().getTimestamp();
+            long newestTimestamp = oldestTimestamp;
+            for (Deque<Frame> frames : pendingFrames) {
+                long timestamp = frames.peekFirst().getTimestamp();
+                if (timestamp - oldestTimestamp < 0) {
+                    oldestFrames = frames;
+                    oldestTimestamp = timestamp;
+                }
+                if (timestamp - newestTimestamp > 0) {
+                    newestTimestamp = timestamp;
+                }
+            }
+            if (newestTimestamp - oldestTimestamp <= tolerance) {
+                Frame[] alignedFrames = new Frame[pendingFrames.size()];
+                for (int i = 0; i < alignedFrames.length; ++i) {
+                    alignedFrames[i] = pendingFrames.get(i).removeFirst();
+                }
+                alignedFrameSets.add(alignedFrames);
+            } else {
+                oldestFrames.removeFirst().release();
+                ++unalignedFrameCount;
+            }
+        }
+        return alignedFrameSets;
+    }
+
+    private void releasePendingFrames() {
+        for (Deque<Frame> frames : pendingFrames) {
+            Frame frame;
+            while ((frame = frames.pollFirst()) != null) {
+                frame.release();
+            }
+        }
+        Frame[] alignedFrames;
+        while ((alignedFrames = alignedFrameSets.pollFirst()) != null) {
+            for (Frame frame : alignedFrames) {
+                frame.release();
+            }
+        }
+    }
+}
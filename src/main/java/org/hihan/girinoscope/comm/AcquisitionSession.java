@@ -0,0 +1,339 @@
+package org.hihan.girinoscope.comm;
+
+import com.fazecast.jSerialComm.SerialPort;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Acquire frames from a Girino without any user interface. A session owns a
+ * Girino and the {@link AcquisitionEngine} talking to it, connecting lazily to
+ * the configured device and keeping the connection open between captures.
+ * <p>
+ * A frame can be captured alone, blocking the caller, or continuously, the
+ * frames being taken by the caller or pushed to a listener. Whatever the way,
+ * a frame should be released once no longer used, in order to be recycled.
+ *
+ * <pre>
+ * try (AcquisitionSession session = new AcquisitionSession()) {
+ *     session.configure(device, port, parameters);
+ *     Frame frame = session.capture(5, TimeUnit.SECONDS);
+ *     ...
+ *     frame.release();
+ * }
+ * </pre>
+ */
+public class AcquisitionSession implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(AcquisitionSession.class.getName());
+
+    private static final long CLOSE_TIMEOUT = 2000;
+
+    /**
+     * Receive the frames of a continuous capture, on the acquisition thread.
+     */
+    public interface FrameListener {
+
+        /**
+         * @param frame The acquired frame, to be released by the listener once
+         * no longer used.
+         */
+        void frameAcquired(Frame frame);
+    }
+
+    private final AcquisitionEngine engine;
+
+    /*
+     * The capture state, guarded by this.
+     */
+    private boolean terminated = true;
+
+    private Exception error;
+
+    private FrameListener frameListener;
+
+    public AcquisitionSession() {
+        this(new AcquisitionEngine.Listener() {
+        });
+    }
+
+    /**
+     * @param listener Notified of the acquisition progress on the acquisition
+     * thread.
+     */
+    public AcquisitionSession(AcquisitionEngine.Listener listener) {
+        this.engine = new AcquisitionEngine(new Girino(), new AcquisitionEngine.Listener() {
+
+            @Override
+            public void connecting(AcquisitionEngine.Configuration configuration) {
+                listener.connecting(configuration);
+            }
+
+            @Override
+            public void acquiring(AcquisitionEngine.Configuration configuration) {
+                listener.acquiring(configuration);
+            }
+
+            @Override
+            public void frameQueued(AcquisitionEngine.Configuration configuration) {
+                dispatchFrames();
+                listener.frameQueued(configuration);
+            }
+
+            @Override
+            public void terminated(AcquisitionEngine.Configuration configuration, Exception error) {
+                captureTerminated(error);
+                listener.terminated(configuration, error);
+            }
+        });
+    }
+
+    /**
+     * Set the device to connect to and its parameters, which could be done
+     * during a capture. A simple parameter change is applied between two
+     * frames, on the same connection.
+     */
+    public void configure(Device device, SerialPort port, Map<Girino.Parameter, Integer> parameters) {
+        engine.configure(device, port, parameters);
+    }
+
+    /**
+     * Same as {@link #configure(Device, SerialPort, Map)} with an already
+     * opened transport, a {@link SimulatedGirino} per instance.
+     */
+    public void configure(Device device, Transport transport, Map<Girino.Parameter, Integer> parameters) {
+        engine.configure(device, transport, parameters);
+    }
+
+    /**
+     * Change some parameters, the other ones and the device being kept.
+     */
+    public void setParameters(Map<Girino.Parameter, Integer> changedParameters) {
+        AcquisitionEngine.Configuration configuration = getConfiguration();
+        Map<Girino.Parameter, Integer> parameters = new EnumMap<>(Girino.Parameter.class);
+        parameters.putAll(configuration.parameters);
+        parameters.putAll(changedParameters);
+        if (configuration.transport != null) {
+            engine.configure(configuration.device, configuration.transport, parameters);
+        } else {
+            engine.configure(configuration.device, configuration.port, parameters);
+        }
+    }
+
+    public AcquisitionEngine.Configuration getConfiguration() {
+        AcquisitionEngine.Configuration configuration = engine.getConfiguration();
+        if (configuration != null) {
+            return configuration;
+        } else {
+            throw new IllegalStateException("No configuration");
+        }
+    }
+
+    /**
+     * Capture a single frame.
+     *
+     * @throws TimeoutException If no frame has been acquired in time, the
+     * capture being cancelled, or if the cancelled capture is still going on
+     * (the device not responding anymore).
+     * @throws CancellationException If the capture has been cancelled by
+     * another thread.
+     * @throws ExecutionException If the acquisition has failed.
+     */
+    public Frame capture(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        start(false);
+        Frame frame = null;
+        boolean returned = false;
+        try {
+            boolean cancelled;
+            try {
+                frame = take(timeout, unit);
+                cancelled = frame == null && !isCapturing();
+            } finally {
+                cancel();
+            }
+            // The session shall be ready for the next capture when we return.
+            if (!awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("Capture not terminated on " + getConfiguration().getEndpointName());
+            }
+            if (frame != null) {
+                returned = true;
+                return frame;
+            } else if (cancelled) {
+                throw new CancellationException("Capture cancelled");
+            } else {
+                throw new TimeoutException("No frame acquired from " + getConfiguration().getEndpointName());
+            }
+        } finally {
+            if (frame != null && !returned) {
+                frame.release();
+            }
+        }
+    }
+
+    /**
+     * Start capturing in the background, the frames being retrieved with
+     * {@link #poll} or {@link #take}. The frames left by a previous capture
+     * are discarded.
+     *
+     * @param repeated false to capture a single frame.
+     */
+    public void start(boolean repeated) {
+        start(repeated, null);
+    }
+
+    /**
+     * Start capturing continuously in the background, the frames being pushed
+     * to the given listener.
+     */
+    public void start(FrameListener frameListener) {
+        start(true, frameListener);
+    }
+
+    private void start(boolean repeated, FrameListener newFrameListener) {
+        synchronized (this) {
+            if (!terminated) {
+                throw new IllegalStateException("Already capturing");
+            }
+            terminated = false;
+            error = null;
+            frameListener = newFrameListener;
+        }
+        Frame staleFrame;
+        while ((staleFrame = engine.poll()) != null) {
+            staleFrame.release();
+        }
+        try {
+            engine.start(repeated);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                terminated = true;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Ask the capture to stop, without waiting for it.
+     */
+    public void cancel() {
+        engine.stop();
+    }
+
+    public synchronized boolean isCapturing() {
+        return !terminated;
+    }
+
+    /**
+     * Wait for the capture to be over.
+     *
+     * @return false if the capture is still going on after the timeout.
+     * @throws ExecutionException If the acquisition has failed.
+     */
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!terminated) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        checkError();
+        return true;
+    }
+
+    /**
+     * Take the oldest acquired frame, if any. There shall be a single thread
+     * retrieving the frames, when no frame listener is used.
+     */
+    public Frame poll() {
+        return engine.poll();
+    }
+
+    /**
+     * Take the oldest acquired frame, waiting for it if needed. There shall be
+     * a single thread retrieving the frames, when no frame listener is used.
+     *
+     * @return The frame, or null if none has been acquired in time or the
+     * capture is over.
+     * @throws ExecutionException If the acquisition has failed.
+     */
+    public Frame take(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            Frame frame;
+            while ((frame = engine.poll()) == null && !terminated) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            if (frame == null) {
+                checkError();
+            }
+            return frame;
+        }
+    }
+
+    /**
+     * @return The number of valid frames acquired since this session creation.
+     */
+    public long getAcquiredFrameCount() {
+        return engine.getAcquiredFrameCount();
+    }
+
+    /**
+     * @see Girino#getBadFrameCount()
+     */
+    public long getBadFrameCount() {
+        return engine.getBadFrameCount();
+    }
+
+    /**
+     * Cancel any capture and disconnect the Girino.
+     */
+    @Override
+    public void close() {
+        try {
+            if (!engine.close(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                LOGGER.log(Level.WARNING, "Serial line not responding.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkError() throws ExecutionException {
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+    }
+
+    private void dispatchFrames() {
+        FrameListener currentFrameListener;
+        synchronized (this) {
+            currentFrameListener = frameListener;
+            if (currentFrameListener == null) {
+                notifyAll();
+            }
+        }
+        if (currentFrameListener != null) {
+            Frame frame;
+            while ((frame = engine.poll()) != null) {
+                currentFrameListener.frameAcquired(frame);
+            }
+        }
+    }
+
+    private synchronized void captureTerminated(Exception captureError) {
+        terminated = true;
+        error = captureError;
+        notifyAll();
+    }
+}
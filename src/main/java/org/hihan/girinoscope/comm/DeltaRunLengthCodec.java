@@ -0,0 +1,147 @@
+package org.hihan.girinoscope.comm;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * The compressed frame encoding (see {@link Device.Feature#COMPRESSION}).
+ * Samples are coded, relatively to the previous one (0 for the first one),
+ * as a sequence of tokens:
+ * <ul>
+ * <li>0xxxxxxx: a sample differing by a delta in [-64, 63] (7 bits two's
+ * complement),</li>
+ * <li>10xxxxxx: the previous sample repeated 1 to 64 times (the 6 bits value
+ * plus 1),</li>
+ * <li>11000000: a literal sample, on the following bytes, most significant
+ * byte first.</li>
+ * </ul>
+ * The decoding is incremental, a byte at a time, to be done while the frame
+ * is received.
+ */
+final class DeltaRunLengthCodec {
+
+    private static final int LITERAL = 0xC0;
+
+    private static final int MAX_RUN_LENGTH = 64;
+
+    private final FrameFormat frameFormat;
+
+    private final int literalSize;
+
+    private final int[] values;
+
+    private int valueCount;
+
+    private int literal;
+
+    private int pendingLiteralBytes;
+
+    DeltaRunLengthCodec(FrameFormat frameFormat) {
+        this.frameFormat = frameFormat;
+        this.literalSize = getLiteralSize(frameFormat);
+        this.values = new int[frameFormat.sampleCount];
+    }
+
+    private static int getLiteralSize(FrameFormat frameFormat) {
+        return frameFormat.packedBitCount > 0 ? (frameFormat.packedBitCount + 7) / 8 : frameFormat.sampleSizeInBit;
+    }
+
+    FrameFormat getFrameFormat() {
+        return frameFormat;
+    }
+
+    /**
+     * @return The size of the worst case encoding of a frame, literals only.
+     */
+    int getMaxEncodedSize() {
+        return frameFormat.sampleCount * (1 + literalSize);
+    }
+
+    void reset() {
+        valueCount = 0;
+        pendingLiteralBytes = 0;
+    }
+
+    /**
+     * @param b The next byte of the encoded frame.
+     * @return false if the byte is not valid here, meaning the encoded frame
+     * is corrupted.
+     */
+    boolean decode(int b) {
+        if (pendingLiteralBytes > 0) {
+            literal = literal << 8 | b;
+            if (--pendingLiteralBytes == 0) {
+                return append(literal, 1);
+            }
+            return true;
+        } else if (valueCount == values.length) {
+            return false;
+        } else if ((b & 0x80) == 0) {
+            int delta = (byte) (b << 1) >> 1;
+            return append(getPreviousValue() + delta, 1);
+        } else if ((b & 0xC0) == 0x80) {
+            return append(getPreviousValue(), (b & 0x3F) + 1);
+        } else if (b == LITERAL) {
+            literal = 0;
+            pendingLiteralBytes = literalSize;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private int getPreviousValue() {
+        return valueCount > 0 ? values[valueCount - 1] : 0;
+    }
+
+    private boolean append(int value, int count) {
+        if (value < 0 || value > frameFormat.sampleMaxValue || valueCount + count > values.length) {
+            return false;
+        }
+        for (int i = 0; i < count; ++i) {
+            values[valueCount++] = value;
+        }
+        return true;
+    }
+
+    boolean isComplete() {
+        return valueCount == values.length && pendingLiteralBytes == 0;
+    }
+
+    /**
+     * Write the decoded frame in its uncompressed format.
+     */
+    void getFrame(byte[] buffer) {
+        frameFormat.writeValues(values, buffer);
+    }
+
+    static byte[] encode(FrameFormat frameFormat, int[] values) {
+        int literalSize = getLiteralSize(frameFormat);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int previousValue = 0;
+        int i = 0;
+        while (i < values.length) {
+            int value = values[i];
+            if (value == previousValue) {
+                int runLength = 1;
+                while (runLength < MAX_RUN_LENGTH && i + runLength < values.length && values[i + runLength] == value) {
+                    ++runLength;
+                }
+                output.write(0x80 | (runLength - 1));
+                i += runLength;
+            } else {
+                int delta = value - previousValue;
+                if (delta >= -64 && delta < 64) {
+                    output.write(delta & 0x7F);
+                } else {
+                    output.write(LITERAL);
+                    for (int j = literalSize - 1; j >= 0; --j) {
+                        output.write(value >>> (j * 8));
+                    }
+                }
+                ++i;
+            }
+            previousValue = value;
+        }
+        return output.toByteArray();
+    }
+}
@@ -2,10 +2,12 @@ package org.hihan.girinoscope.comm;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import static org.hihan.girinoscope.comm.Girino.Parameter.*;
 
 /**
@@ -36,6 +38,33 @@ public class Device {
         READ_WRITE
     }
 
+    /**
+     * Optional extensions of the Girino protocol a firmware could implement
+     * (see the 'doc/protocol_extensions.md' file).
+     */
+    public enum Feature {
+        /**
+         * Once started, frames are sent back-to-back, each one preceded by a
+         * sync header, without requiring a stop / start for each of them.
+         */
+        STREAMING,
+        /**
+         * Several newline terminated commands could be sent in a row without
+         * waiting for their responses.
+         */
+        PIPELINED_COMMANDS,
+        /**
+         * Each frame is sent with a sync header, its length and a CRC, allowing
+         * corrupted frames to be detected and dropped.
+         */
+        FRAMING,
+        /**
+         * Frames are delta and run-length encoded (see
+         * {@link DeltaRunLengthCodec}).
+         */
+        COMPRESSION
+    }
+
     public static final Device[] DEVICES = {createClassic(), createSoftGirino(), createStm32f103mm()};
 
     // Matching firmware: https://github.com/supacyan/girino
@@ -57,7 +86,7 @@ public class Device {
         supports.put(CHANNEL_COMPOSITION, SupportLevel.NONE);
 
         Map<Girino.Parameter, Integer> parameters = new HashMap<>();
-        parameters.put(BUFFER_SIZE, frameFormat.sampleCount * frameFormat.sampleSizeInBit);
+        parameters.put(BUFFER_SIZE, frameFormat.getFrameSize());
         parameters.put(PRESCALER, 32);
         parameters.put(VOLTAGE_REFERENCE, Girino.VoltageReference.AVCC.value);
         parameters.put(TRIGGER_EVENT, Girino.TriggerEventMode.TOGGLE.value);
@@ -85,7 +114,9 @@ public class Device {
                 frameFormat,
                 infos,
                 supports,
-                parameters);
+                parameters,
+                Collections.singletonList(Serial.DEFAULT_DATA_RATE),
+                EnumSet.noneOf(Feature.class));
     }
 
     // Matching firmware: https://github.com/mabartibin/SoftGirino
@@ -107,7 +138,7 @@ public class Device {
         supports.put(CHANNEL_COMPOSITION, SupportLevel.READ_WRITE);
 
         Map<Girino.Parameter, Integer> parameters = new HashMap<>();
-        parameters.put(BUFFER_SIZE, frameFormat.sampleCount * frameFormat.sampleSizeInBit);
+        parameters.put(BUFFER_SIZE, frameFormat.getFrameSize());
         parameters.put(PRESCALER, 32);
         parameters.put(VOLTAGE_REFERENCE, Girino.VoltageReference.AVCC.value);
         parameters.put(EXT_TRIGGER_EVENT, Girino.TriggerEventMode.RISING_EDGE.value);
@@ -135,7 +166,9 @@ public class Device {
                 frameFormat,
                 infos,
                 supports,
-                parameters);
+                parameters,
+                Collections.singletonList(Serial.DEFAULT_DATA_RATE),
+                EnumSet.noneOf(Feature.class));
     }
 
     // Matching firmware: https://github.com/ag88/GirinoSTM32F103duino
@@ -155,7 +188,7 @@ public class Device {
         supports.put(CHANNEL_COMPOSITION, SupportLevel.NONE);
 
         Map<Girino.Parameter, Integer> parameters = new HashMap<>();
-        parameters.put(BUFFER_SIZE, frameFormat.sampleCount * frameFormat.sampleSizeInBit);
+        parameters.put(BUFFER_SIZE, frameFormat.getFrameSize());
         parameters.put(PRESCALER, 128);
         parameters.put(TRIGGER_EVENT, Girino.TriggerEventMode.TOGGLE.value);
         parameters.put(WAIT_DURATION, frameFormat.sampleCount - 32);
@@ -183,7 +216,9 @@ public class Device {
                 frameFormat,
                 infos,
                 supports,
-                parameters);
+                parameters,
+                Collections.singletonList(Serial.DEFAULT_DATA_RATE),
+                EnumSet.noneOf(Feature.class));
     }
 
     public final String id;
@@ -210,6 +245,14 @@ public class Device {
 
     private final Map<Girino.Parameter, Integer> factoryParameterValues;
 
+    /**
+     * The baud rates supported by the firmware, the first one being the one
+     * used after a reset.
+     */
+    private final List<Integer> baudRates;
+
+    private final Set<Feature> features;
+
     private Device(
             String id,
             String description,
@@ -219,11 +262,16 @@ public class Device {
             FrameFormat frameFormat,
             List<Girino.PrescalerInfo> prescalerInfoValues,
             Map<Girino.Parameter, SupportLevel> parameterSupportLevels,
-            Map<Girino.Parameter, Integer> factoryParameterValues) {
+            Map<Girino.Parameter, Integer> factoryParameterValues,
+            List<Integer> baudRates,
+            Set<Feature> features) {
 
         if (prescalerInfoValues.isEmpty()) {
             throw new IllegalArgumentException("Need at least 1 prescaler value!");
         }
+        if (baudRates.isEmpty()) {
+            throw new IllegalArgumentException("Need at least 1 baud rate!");
+        }
 
         this.id = id;
         this.description = description;
@@ -234,6 +282,82 @@ public class Device {
         this.prescalerInfoValues = prescalerInfoValues;
         this.parameterSupportLevels = parameterSupportLevels;
         this.factoryParameterValues = factoryParameterValues;
+        this.baudRates = baudRates;
+        this.features = features;
+    }
+
+    /**
+     * Create a copy of this device with some additional protocol features,
+     * typically to describe a customized firmware.
+     */
+    public Device withFeatures(Feature... additionalFeatures) {
+        Set<Feature> newFeatures = EnumSet.noneOf(Feature.class);
+        newFeatures.addAll(features);
+        newFeatures.addAll(Arrays.asList(additionalFeatures));
+        return new Device(
+                id,
+                description,
+                setupDelayOnReset,
+                chainedCommandDelay,
+                readyMessage,
+                frameFormat,
+                prescalerInfoValues,
+                parameterSupportLevels,
+                factoryParameterValues,
+                baudRates,
+                newFeatures);
+    }
+
+    /**
+     * Create a copy of this device for a firmware sending its samples in
+     * another format, typically a packed one (see {@link FrameFormat#packed})
+     * to save some bandwidth.
+     *
+     * @param newFrameFormat The new format, with the same number of samples.
+     */
+    public Device withFrameFormat(FrameFormat newFrameFormat) {
+        if (newFrameFormat.sampleCount != frameFormat.sampleCount) {
+            throw new IllegalArgumentException("sampleCount: " + newFrameFormat.sampleCount);
+        }
+        Map<Girino.Parameter, Integer> newFactoryParameterValues = new HashMap<>(factoryParameterValues);
+        newFactoryParameterValues.put(BUFFER_SIZE, newFrameFormat.getFrameSize());
+        return new Device(
+                id,
+                description,
+                setupDelayOnReset,
+                chainedCommandDelay,
+                readyMessage,
+                newFrameFormat,
+                prescalerInfoValues,
+                parameterSupportLevels,
+                newFactoryParameterValues,
+                baudRates,
+                features);
+    }
+
+    /**
+     * Create a copy of this device for a firmware able to switch to any of the
+     * given baud rates when asked to (the baud rate becoming a writable
+     * parameter, or a read only one again with a single rate).
+     *
+     * @param newBaudRates The supported baud rates, the first one being the
+     * one used after a reset.
+     */
+    public Device withBaudRates(Integer... newBaudRates) {
+        Map<Girino.Parameter, SupportLevel> newParameterSupportLevels = new HashMap<>(parameterSupportLevels);
+        newParameterSupportLevels.put(BAUD_RATE, newBaudRates.length > 1 ? SupportLevel.READ_WRITE : SupportLevel.READ_ONLY);
+        return new Device(
+                id,
+                description,
+                setupDelayOnReset,
+                chainedCommandDelay,
+                readyMessage,
+                frameFormat,
+                prescalerInfoValues,
+                newParameterSupportLevels,
+                factoryParameterValues,
+                Arrays.asList(newBaudRates),
+                features);
     }
 
     public String getId() {
@@ -256,6 +380,14 @@ public class Device {
         return frameFormat;
     }
 
+    public boolean hasFeature(Feature feature) {
+        return features.contains(feature);
+    }
+
+    public List<Integer> getBaudRates() {
+        return baudRates;
+    }
+
     public List<Girino.PrescalerInfo> getPrescalerInfoValues() {
         return prescalerInfoValues;
     }
@@ -0,0 +1,45 @@
+package org.hihan.girinoscope.comm;
+
+/**
+ * A buffer holding the raw bytes of a single acquired frame. Frames are meant
+ * to be obtained from a {@link FramePool} and given back to it once no longer
+ * used through the {@link #release} method.
+ */
+public final class Frame {
+
+    private final FramePool pool;
+
+    private final byte[] data;
+
+    private long timestamp;
+
+    Frame(FramePool pool, int size) {
+        this.pool = pool;
+        this.data = new byte[size];
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return The host time (a {@link System#nanoTime()}) at which the frame
+     * has been received, in order to align frames acquired from several
+     * devices.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Give this frame back to its pool. The frame (and its data) shall not be
+     * used anymore after this call.
+     */
+    public void release() {
+        pool.recycle(this);
+    }
+}
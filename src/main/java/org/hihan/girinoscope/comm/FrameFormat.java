@@ -1,27 +1,57 @@
 package org.hihan.girinoscope.comm;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 
 public final class FrameFormat {
 
+    /*
+     * Decode count samples starting at the given sample index and separated by
+     * step samples (1 for a single channel).
+     */
+    private interface Decoder {
+
+        void decode(byte[] data, int first, int step, int[] values, int count);
+    }
+
     public final int sampleCount;
 
+    /**
+     * The size of a sample in bytes (despite its name). For a packed format,
+     * it is the size of an unpacked sample.
+     */
     public final int sampleSizeInBit;
 
+    /**
+     * Note that, for historical reasons, a "big endian" sample is sent with
+     * its least significant byte first.
+     */
     public final boolean bigEndian;
 
     public final int sampleMaxValue;
 
+    /**
+     * The number of bits used by a sample in a packed format, or 0 if the
+     * samples are byte aligned.
+     */
+    public final int packedBitCount;
+
+    private final Decoder decoder;
+
     public FrameFormat(int sampleCount, int sampleSizeInBit, boolean bigEndian, int sampleMaxValue) {
+        this(sampleCount, sampleSizeInBit, bigEndian, sampleMaxValue, 0);
+    }
+
+    private FrameFormat(int sampleCount, int sampleSizeInBit, boolean bigEndian, int sampleMaxValue, int packedBitCount) {
         if (sampleSizeInBit < 1 || sampleSizeInBit > 4) {
             throw new IllegalArgumentException("depthInBit: " + sampleSizeInBit);
         }
-        if (sampleCount < 1 || sampleCount > Integer.MAX_VALUE / sampleSizeInBit) {
+        if (sampleCount < 1 || sampleCount > Integer.MAX_VALUE / Math.max(sampleSizeInBit, packedBitCount)) {
             throw new IllegalArgumentException("width: " + sampleCount);
         }
-        if (sampleMaxValue < 0 || sampleMaxValue > Math.pow(256, sampleSizeInBit) - 1 || sampleMaxValue > Integer.MAX_VALUE) {
+        if (sampleMaxValue < 0 || sampleMaxValue > Math.pow(256, sampleSizeInBit) - 1 || sampleMaxValue > Integer.MAX_VALUE
+                || packedBitCount > 0 && sampleMaxValue >= 1 << packedBitCount) {
             throw new IllegalArgumentException("maxValue: " + sampleMaxValue);
         }
 
@@ -29,25 +59,226 @@ public final class FrameFormat {
         this.sampleSizeInBit = sampleSizeInBit;
         this.bigEndian = bigEndian;
         this.sampleMaxValue = sampleMaxValue;
+        this.packedBitCount = packedBitCount;
+        this.decoder = packedBitCount > 0
+                ? createPackedDecoder(packedBitCount)
+                : createDecoder(sampleSizeInBit, bigEndian);
     }
 
-    public int[] readValues(byte... data) {
-        List<Integer> byteOffsets = new ArrayList<>(sampleSizeInBit);
-        for (int i = 0; i < sampleSizeInBit; ++i) {
-            byteOffsets.add(i * 8);
+    /**
+     * Create a format where samples are not byte aligned, but packed as a
+     * continuous stream of bits, least significant bits first. With 12 bits
+     * per sample, 2 samples are sent as 3 bytes: [a7..a0] [b3..b0 a11..a8]
+     * [b11..b4].
+     *
+     * @param packedBitCount The number of bits per sample, between 9 and 16
+     * (typically 10 or 12).
+     */
+    public static FrameFormat packed(int sampleCount, int packedBitCount, int sampleMaxValue) {
+        if (packedBitCount < 9 || packedBitCount > 16) {
+            throw new IllegalArgumentException("packedBitCount: " + packedBitCount);
         }
-        if (!bigEndian) {
-            Collections.reverse(byteOffsets);
+        return new FrameFormat(sampleCount, 2, true, sampleMaxValue, packedBitCount);
+    }
+
+    /**
+     * @return The size in bytes of a whole frame.
+     */
+    public int getFrameSize() {
+        return getByteCount(sampleCount);
+    }
+
+    private int getByteCount(int count) {
+        return packedBitCount > 0
+                ? (int) (((long) count * packedBitCount + 7) / 8)
+                : count * sampleSizeInBit;
+    }
+
+    /**
+     * @return The number of (whole) samples held by some data.
+     */
+    public int getSampleCount(byte[] data) {
+        return packedBitCount > 0
+                ? (int) ((long) data.length * 8 / packedBitCount)
+                : data.length / sampleSizeInBit;
+    }
+
+    /*
+     * This is called on each repaint, hence a decoder specialized for each
+     * sample size and endianness, instead of a generic loop over the bytes.
+     */
+    private static Decoder createDecoder(int sampleSizeInBit, boolean lowByteFirst) {
+        switch (sampleSizeInBit) {
+            case 1:
+                return (data, first, step, values, count) -> {
+                    for (int i = 0, j = first; i < count; ++i, j += step) {
+                        values[i] = data[j] & 0xFF;
+                    }
+                };
+            case 2:
+                if (lowByteFirst) {
+                    return (data, first, step, values, count) -> {
+                        for (int i = 0, j = first * 2; i < count; ++i, j += step * 2) {
+                            values[i] = (data[j] & 0xFF) | (data[j + 1] & 0xFF) << 8;
+                        }
+                    };
+                } else {
+                    return (data, first, step, values, count) -> {
+                        for (int i = 0, j = first * 2; i < count; ++i, j += step * 2) {
+                            values[i] = (data[j] & 0xFF) << 8 | (data[j + 1] & 0xFF);
+                        }
+                    };
+                }
+            case 3:
+                if (lowByteFirst) {
+                    return (data, first, step, values, count) -> {
+                        for (int i = 0, j = first * 3; i < count; ++i, j += step * 3) {
+                            values[i] = (data[j] & 0xFF) | (data[j + 1] & 0xFF) << 8 | (data[j + 2] & 0xFF) << 16;
+                        }
+                    };
+                } else {
+                    return (data, first, step, values, count) -> {
+                        for (int i = 0, j = first * 3; i < count; ++i, j += step * 3) {
+                            values[i] = (data[j] & 0xFF) << 16 | (data[j + 1] & 0xFF) << 8 | (data[j + 2] & 0xFF);
+                        }
+                    };
+                }
+            case 4:
+                ByteOrder order = lowByteFirst ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+                return (data, first, step, values, count) -> {
+                    ByteBuffer buffer = ByteBuffer.wrap(data).order(order);
+                    if (step == 1) {
+                        buffer.position(first * 4);
+                        buffer.asIntBuffer().get(values, 0, count);
+                    } else {
+                        for (int i = 0, j = first * 4; i < count; ++i, j += step * 4) {
+                            values[i] = buffer.getInt(j);
+                        }
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("depthInBit: " + sampleSizeInBit);
         }
+    }
 
-        int[] values = new int[data.length / sampleSizeInBit];
-        for (int i = 0; i < values.length; ++i) {
-            int value = 0;
-            for (int j = 0; j < sampleSizeInBit; ++j) {
-                value += (data[i * sampleSizeInBit + j] & 0xFF) << byteOffsets.get(j);
+    /*
+     * A sample of 9 to 16 bits always spans 2 or 3 bytes we read at once,
+     * instead of assembling it bit by bit.
+     */
+    private static Decoder createPackedDecoder(int bitCount) {
+        int mask = (1 << bitCount) - 1;
+        return (data, first, step, values, count) -> {
+            long bitOffset = (long) first * bitCount;
+            for (int i = 0; i < count; ++i, bitOffset += step * bitCount) {
+                values[i] = readPackedSample(data, bitOffset, mask);
             }
-            values[i] = value;
+        };
+    }
+
+    private static int readPackedSample(byte[] data, long bitOffset, int mask) {
+        int j = (int) (bitOffset >>> 3);
+        int window = (data[j] & 0xFF) | (data[j + 1] & 0xFF) << 8;
+        if (j + 2 < data.length) {
+            window |= (data[j + 2] & 0xFF) << 16;
         }
+        return window >>> (bitOffset & 7) & mask;
+    }
+
+    public int[] readValues(byte... data) {
+        int[] values = new int[getSampleCount(data)];
+        readValues(data, values);
         return values;
     }
+
+    /**
+     * Same as {@link #readValues(byte...)}, but decode the values into a
+     * caller-supplied array, which is expected to be large enough.
+     */
+    public void readValues(byte[] data, int[] values) {
+        decoder.decode(data, 0, 1, values, getSampleCount(data));
+    }
+
+    /**
+     * Decode interleaved samples into an array per channel, the first sample
+     * belonging to the first channel and so on. Each byte is read only once.
+     *
+     * @param channels The channels to fill, which are expected to be large
+     * enough to hold all their samples.
+     */
+    public void readChannels(byte[] data, int[][] channels) {
+        int channelCount = channels.length;
+        int sampleCountPerChannel = getSampleCount(data) / channelCount;
+        for (int channel = 0; channel < channelCount; ++channel) {
+            decoder.decode(data, channel, channelCount, channels[channel], sampleCountPerChannel);
+        }
+    }
+
+    public int[][] readChannels(byte[] data, Girino.ChannelCompositionMode channelCompositionMode) {
+        int channelCount = channelCompositionMode.getChannelCount();
+        int[][] channels = new int[channelCount][getSampleCount(data) / channelCount];
+        readChannels(data, channels);
+        return channels;
+    }
+
+    /**
+     * Same as {@link #readValues(byte[], int[])} for samples of 2 bytes at
+     * most. The values are stored as is, that is values above
+     * {@link Short#MAX_VALUE} become negative and need to be masked with
+     * 0xFFFF.
+     *
+     * @throws IllegalStateException If the samples are larger than 2 bytes.
+     */
+    public void readValues(byte[] data, short[] values) {
+        int count = getSampleCount(data);
+        if (packedBitCount > 0) {
+            int mask = (1 << packedBitCount) - 1;
+            long bitOffset = 0;
+            for (int i = 0; i < count; ++i, bitOffset += packedBitCount) {
+                values[i] = (short) readPackedSample(data, bitOffset, mask);
+            }
+            return;
+        }
+        switch (sampleSizeInBit) {
+            case 1:
+                for (int i = 0; i < count; ++i) {
+                    values[i] = (short) (data[i] & 0xFF);
+                }
+                break;
+            case 2:
+                ByteBuffer.wrap(data, 0, count * 2)
+                        .order(bigEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN)
+                        .asShortBuffer()
+                        .get(values, 0, count);
+                break;
+            default:
+                throw new IllegalStateException("Samples too large for shorts: " + sampleSizeInBit);
+        }
+    }
+
+    /**
+     * The reverse operation of {@link #readValues(byte[], int[])}.
+     */
+    public void writeValues(int[] values, byte[] data) {
+        int valueCount = getSampleCount(data);
+        if (packedBitCount > 0) {
+            int mask = (1 << packedBitCount) - 1;
+            Arrays.fill(data, 0, getByteCount(valueCount), (byte) 0);
+            long bitOffset = 0;
+            for (int i = 0; i < valueCount; ++i, bitOffset += packedBitCount) {
+                int j = (int) (bitOffset >>> 3);
+                int window = (values[i] & mask) << (bitOffset & 7);
+                for (int k = 0; k < 3 && j + k < data.length; ++k) {
+                    data[j + k] |= (byte) (window >>> (k * 8));
+                }
+            }
+        } else {
+            for (int i = 0; i < valueCount; ++i) {
+                int value = values[i];
+                for (int j = 0; j < sampleSizeInBit; ++j) {
+                    int shift = (bigEndian ? j : sampleSizeInBit - j - 1) * 8;
+                    data[i * sampleSizeInBit + j] = (byte) (value >>> shift);
+                }
+            }
+        }
+    }
 }
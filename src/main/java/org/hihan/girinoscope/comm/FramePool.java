@@ -0,0 +1,42 @@
+package org.hihan.girinoscope.comm;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of reusable frames of a given size. Acquiring in loop with a
+ * pool doesn’t allocate anything once enough frames are in circulation. The
+ * pool never blocks: a new frame is created when none is available and a
+ * released frame is simply forgotten when the pool is already full.
+ */
+public class FramePool {
+
+    private final int frameSize;
+
+    private final BlockingQueue<Frame> frames;
+
+    public FramePool(int frameSize, int capacity) {
+        if (frameSize < 1) {
+            throw new IllegalArgumentException("frameSize: " + frameSize);
+        }
+        this.frameSize = frameSize;
+        this.frames = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public FramePool(FrameFormat frameFormat, int capacity) {
+        this(frameFormat.getFrameSize(), capacity);
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public Frame acquire() {
+        Frame frame = frames.poll();
+        return frame != null ? frame : new Frame(this, frameSize);
+    }
+
+    void recycle(Frame frame) {
+        frames.offer(frame);
+    }
+}
@@ -3,11 +3,17 @@ package org.hihan.girinoscope.comm;
 import com.fazecast.jSerialComm.SerialPort;
 import java.io.IOException;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.hihan.girinoscope.utils.Checksum;
+import org.hihan.girinoscope.utils.Metrics;
 
 public class Girino {
 
@@ -16,7 +22,7 @@ public class Girino {
     public enum Parameter {
 
         BUFFER_SIZE(null),
-        BAUD_RATE(null),
+        BAUD_RATE("b"),
         PRESCALER("p"),
         VOLTAGE_REFERENCE("r"),
         TRIGGER_EVENT("e"),
@@ -31,6 +37,10 @@ public class Girino {
             this.command = command;
         }
 
+        String getCommand() {
+            return command;
+        }
+
         public String getIdentifier() {
             if (this == WAIT_DURATION) {
                 return "waitDuration";
@@ -56,38 +66,63 @@ public class Girino {
             return null;
         }
 
-        private static Map.Entry<Parameter, Integer> read(Serial serial, Device device) throws IOException, InterruptedException {
-            String data = serial.readLine();
+        private static Map.Entry<Parameter, Integer> read(Transport transport, Device device) throws IOException, InterruptedException {
+            String data = readResponse(transport);
             if (device.getReadyMessage().equals(data)) {
-                data = serial.readLine();
+                data = readResponse(transport);
             }
             String[] items = data.split(":");
+            if (items.length != 2) {
+                throw new IOException("Unexpected response: " + data);
+            }
             String name = items[0].trim();
-            int value = Integer.parseInt(items[1].trim());
+            int value;
+            try {
+                value = Integer.parseInt(items[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Unexpected response: " + data, e);
+            }
             Parameter parameter = Parameter.findByDescription(name);
             return new AbstractMap.SimpleEntry<>(parameter, value);
         }
 
-        private int apply(Serial serial, int newValue) throws IOException, InterruptedException {
+        private int apply(Transport transport, int newValue) throws IOException, InterruptedException {
+            transport.writeLine(getCommandLine(newValue));
+            return readEcho(readResponse(transport));
+        }
+
+        private String getCommandLine(int newValue) {
             if (command != null) {
-                serial.writeLine(command + newValue);
-                String data = serial.readLine();
-                String[] items = data.split(":");
-                if (items.length > 1) {
-                    String message = items[0].trim();
-                    String identifier = getIdentifier();
-                    if (message.equals(String.format("Setting %s to", identifier))) {
-                        return Integer.parseInt(items[1].trim());
-                    } else {
-                        throw new IOException("Not matching returned parameter " + identifier);
-                    }
-                } else {
-                    throw new IOException("Unknown parameter " + getDescription());
-                }
+                return command + newValue;
             } else {
                 throw new IllegalArgumentException("Read only parameter " + getDescription());
             }
         }
+
+        private int readEcho(String data) throws IOException {
+            String identifier = getIdentifier();
+            if (identifier.equals(getEchoedIdentifier(data))) {
+                return Integer.parseInt(data.split(":")[1].trim());
+            } else if (data.split(":").length > 1) {
+                throw new IOException("Not matching returned parameter " + identifier);
+            } else {
+                throw new IOException("Unknown parameter " + getDescription());
+            }
+        }
+
+        /*
+         * The identifier of the parameter in a 'Setting xxx to: 123' echo.
+         */
+        private static String getEchoedIdentifier(String data) {
+            String[] items = data.split(":");
+            if (items.length > 1) {
+                String message = items[0].trim();
+                if (message.startsWith("Setting ") && message.endsWith(" to")) {
+                    return message.substring("Setting ".length(), message.length() - " to".length());
+                }
+            }
+            return null;
+        }
     }
 
     public static class PrescalerInfo {
@@ -145,16 +180,25 @@ public class Girino {
 
     public enum ChannelCompositionMode {
 
-        SINGLE(1, "Single"), //
-        DUAL(2, "Dual"), //
-        XY(3, "X-Y");
+        SINGLE(1, "Single", 1), //
+        DUAL(2, "Dual", 2), //
+        XY(3, "X-Y", 2);
 
         public int value;
         public String description;
+        private final int channelCount;
 
-        ChannelCompositionMode(int value, String description) {
+        ChannelCompositionMode(int value, String description, int channelCount) {
             this.value = value;
             this.description = description;
+            this.channelCount = channelCount;
+        }
+
+        /**
+         * @return The number of channels interleaved in a frame.
+         */
+        public int getChannelCount() {
+            return channelCount;
         }
     }
 
@@ -178,62 +222,163 @@ public class Girino {
         }
     }
 
+    /*
+     * Milliseconds to wait for the response to a command. The Girino answers
+     * immediately, anything longer means we are not talking to it.
+     */
+    private static final long RESPONSE_TIMEOUT = 2000;
+
     private static final String START_ACQUIRING_COMMAND = "s";
 
     private static final String STOP_ACQUIRING_COMMAND = "S";
 
     private static final String DUMP_COMMAND = "d";
 
-    private Serial serial;
+    private static final String START_STREAMING_COMMAND = "l";
+
+    /*
+     * Separate pipelined commands.
+     */
+    private static final char COMMAND_TERMINATOR = '\n';
+
+    /*
+     * The header preceding each frame when streaming.
+     */
+    static final byte[] FRAME_SYNC_HEADER = {(byte) 0xA5, (byte) 0x5A, (byte) 0xA5, (byte) 0x5A};
+
+    private Transport transport;
 
-    private SerialPort port;
+    /*
+     * What the transport is connected to: a serial port or the transport itself
+     * when provided by the caller.
+     */
+    private Object endpoint;
 
     private Device device = Device.createClassic();
 
     private final Map<Parameter, Integer> parameters = new HashMap<>();
 
+    private boolean streaming;
+
+    private volatile long badFrameCount;
+
+    private DeltaRunLengthCodec codec;
+
+    /*
+     * The parameters dumped by each device right after a reset, per endpoint
+     * and device description. Kept per Girino, another one being free to talk
+     * to another device through the same kind of endpoint.
+     */
+    private final Map<String, Map<Parameter, Integer>> resetParametersCache = new HashMap<>();
+
     private void connect(SerialPort newPort) throws IOException, InterruptedException {
         if (newPort != null) {
-            if (serial == null || !Objects.equals(port, newPort)) {
-                port = newPort;
-                if (serial != null) {
-                    disconnect();
-                }
+            if (transport == null || !Objects.equals(endpoint, newPort)) {
+                disconnect();
+                setUp(newPort, new Serial(newPort, device.getBaudRates().get(0)));
+            }
+        } else {
+            throw new IllegalArgumentException("No serial port (see README.md file)");
+        }
+    }
 
-                serial = new Serial(port);
-                try {
-                    /*
-                     * The serial port is expected to reset the AVR each time a
-                     * connection is etablished. The delay here is to give some
-                     * time to the controller to set itself up. Since the Girino
-                     * protocol only outputs its signature at startup, a lack of
-                     * response could be an inappropriate serial adapter without
-                     * the DTR/RTS wire (ie. it has only 4 wires) used to force
-                     * a reset. It won’t be the case with an Arduino, but if you
-                     * have built your device from scratch, it could.
-                     */
-                    Thread.sleep(device.getSetupDelayOnReset());
-
-                    String data;
-                    do {
-                        data = serial.readLine();
-                    } while (data.isEmpty());
-                    if (!data.endsWith(device.getReadyMessage())) {
-                        throw new IOException("Expected a '" + device.getReadyMessage() + "' device but found a '" + data + "'");
-                    }
-                } catch (InterruptedException e) {
-                    /*
-                     * The underlying serial port library introduces a delay to
-                     * avoid a rapid closing/opening on the part of the user.
-                     * Interrupting it too fast will defeat this approach...
-                     */
-                    disconnect();
-                }
+    private void setUp(Object newEndpoint, Transport newTransport) throws IOException, InterruptedException {
+        endpoint = newEndpoint;
+        transport = newTransport;
+        Metrics.CONNECTIONS.increment();
+        try {
+            boolean reset = waitForReadyMessage();
 
+            /*
+             * A device which has just been reset is in the same state as the
+             * last time it was reset, sparing us a dump.
+             */
+            String cacheKey = getCacheKey();
+            Map<Parameter, Integer> resetParameters = reset ? resetParametersCache.get(cacheKey) : null;
+            if (resetParameters != null) {
+                LOGGER.log(Level.FINE, "Reusing the parameters dumped after the last reset.");
+                parameters.clear();
+                parameters.putAll(resetParameters);
+            } else {
                 readParameters();
+                if (reset) {
+                    resetParametersCache.put(cacheKey, new HashMap<>(parameters));
+                }
+            }
+            negotiateBaudRate();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            /*
+             * A half set up connection is of no use, the next connection
+             * starting from scratch. Note that the underlying serial port
+             * library introduces a delay to avoid a rapid closing/opening on
+             * the part of the user. Interrupting it too fast will defeat this
+             * approach...
+             */
+            disconnect();
+            throw e;
+        }
+    }
+
+    /*
+     * The serial port is expected to reset the AVR each time a connection is
+     * etablished, the Girino outputting its signature once set up. Since we
+     * don’t want to mess with the bootloader, nothing is sent before this
+     * signature or the end of the setup delay. A lack of response could be an
+     * inappropriate serial adapter without the DTR/RTS wire (ie. it has only 4
+     * wires) used to force a reset. It won’t be the case with an Arduino, but
+     * if you have built your device from scratch, it could. Such a device is
+     * simply probed afterward by the parameter dump.
+     *
+     * Returns true if the device has been reset.
+     */
+    private boolean waitForReadyMessage() throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + device.getSetupDelayOnReset() + RESPONSE_TIMEOUT;
+        long remaining;
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+            String data = transport.readLine(remaining);
+            if (data == null) {
+                break;
+            } else if (data.endsWith(device.getReadyMessage())) {
+                return true;
+            } else if (!data.isEmpty()) {
+                throw new IOException("Expected a '" + device.getReadyMessage() + "' device but found a '" + data + "'");
+            }
+        }
+        LOGGER.log(Level.INFO, "No ready message received, probing the device.");
+        return false;
+    }
+
+    /*
+     * The copies of a device (see Device.withFeatures for instance) keep its
+     * id, but not its reset parameters.
+     */
+    private String getCacheKey() {
+        String endpointName = endpoint instanceof SerialPort
+                ? ((SerialPort) endpoint).getSystemPortName()
+                : endpoint.getClass().getName();
+        FrameFormat frameFormat = device.getFrameFormat();
+        StringBuilder key = new StringBuilder(endpointName)
+                .append('/').append(device.getId())
+                .append('/').append(frameFormat.sampleCount)
+                .append('x').append(frameFormat.sampleSizeInBit)
+                .append(frameFormat.bigEndian ? "be" : "le")
+                .append(':').append(frameFormat.packedBitCount)
+                .append(':').append(frameFormat.sampleMaxValue)
+                .append('/').append(device.getBaudRates());
+        for (Device.Feature feature : Device.Feature.values()) {
+            if (device.hasFeature(feature)) {
+                key.append('/').append(feature);
             }
+        }
+        return key.toString();
+    }
+
+    private static String readResponse(Transport transport) throws IOException, InterruptedException {
+        String data = transport.readLine(RESPONSE_TIMEOUT);
+        if (data != null) {
+            return data;
         } else {
-            throw new IllegalArgumentException("No serial port (see README.md file)");
+            throw new IOException("No response from the device");
         }
     }
 
@@ -241,32 +386,151 @@ public class Girino {
             throws Exception {
         this.device = Objects.requireNonNull(device);
         connect(newPort);
-        if (serial != null) {
+        if (transport != null) {
+            stopStreaming();
             applyParameters(newParameters);
         }
     }
 
+    /**
+     * Connect through an already opened transport, a {@link SimulatedGirino}
+     * per instance. The transport is owned by this Girino from now on and will
+     * be closed on disconnection.
+     */
+    public void connect(Device device, Transport newTransport, Map<Parameter, Integer> newParameters)
+            throws Exception {
+        this.device = Objects.requireNonNull(device);
+        if (transport == null || endpoint != newTransport) {
+            disconnect();
+            setUp(newTransport, Objects.requireNonNull(newTransport));
+        }
+        if (transport != null) {
+            stopStreaming();
+            applyParameters(newParameters);
+        }
+    }
+
+    /**
+     * Apply the changed parameters through the current connection, between two
+     * frames. A streaming in progress is stopped if anything has to be
+     * changed, the next acquisition restarting it.
+     *
+     * @throws IOException If the device has set back some parameters to a
+     * different value than asked.
+     */
+    public void updateParameters(Map<Parameter, Integer> newParameters) throws IOException, InterruptedException {
+        if (transport != null) {
+            Map<Parameter, Integer> changedParameters = getChangedParameters(newParameters);
+            if (!changedParameters.isEmpty()) {
+                /*
+                 * A device accepting pipelined commands doesn't need to be
+                 * given some time between the stop and the changes.
+                 */
+                boolean pipelinedStop = streaming && device.hasFeature(Device.Feature.PIPELINED_COMMANDS);
+                if (pipelinedStop) {
+                    streaming = false;
+                } else {
+                    stopStreaming();
+                }
+                applyChangedParameters(changedParameters, pipelinedStop);
+                Metrics.PARAMETER_UPDATES.increment();
+            }
+        } else {
+            throw new IllegalStateException("No connection");
+        }
+    }
+
     public void disconnect() throws IOException {
-        if (serial != null) {
-            serial.close();
-            serial = null;
+        if (transport != null) {
+            transport.close();
+            transport = null;
+            endpoint = null;
+            streaming = false;
         }
     }
 
     private void readParameters() throws IOException, InterruptedException {
-        if (serial != null) {
-            serial.writeLine(DUMP_COMMAND);
+        if (transport != null) {
+            transport.writeLine(DUMP_COMMAND);
             for (Parameter parameter : Parameter.values()) {
                 if (device.isReadable(parameter)) {
-                    Map.Entry<Parameter, Integer> entry = Parameter.read(serial, device);
+                    Map.Entry<Parameter, Integer> entry = Parameter.read(transport, device);
                     if (entry.getKey() != null) {
                         parameters.put(entry.getKey(), entry.getValue());
                     }
                 }
             }
         } else {
-            throw new IllegalStateException("No serial connection");
+            throw new IllegalStateException("No connection");
+        }
+    }
+
+    /*
+     * Switch to the highest baud rate accepted by the device. The device is
+     * expected to acknowledge the change at the current rate before switching
+     * to the new one. A parameter dump at the new rate is then used to verify
+     * that both sides are able to talk to each other, the next lower rate
+     * being tried otherwise (a cable too long for the highest one for
+     * instance).
+     */
+    private void negotiateBaudRate() throws IOException, InterruptedException {
+        if (transport != null && device.isWritable(Parameter.BAUD_RATE)) {
+            int initialBaudRate = transport.getDataRate();
+            List<Integer> baudRates = new ArrayList<>(device.getBaudRates());
+            baudRates.sort(Collections.reverseOrder());
+            for (int baudRate : baudRates) {
+                if (baudRate <= initialBaudRate) {
+                    break;
+                }
+                int returnedValue = Parameter.BAUD_RATE.apply(transport, baudRate);
+                if (returnedValue == baudRate) {
+                    Thread.sleep(device.getChainedCommandDelay());
+                    transport.setDataRate(baudRate);
+                    try {
+                        readParameters();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "No reliable link at {0} bauds: {1}", new Object[]{baudRate, e.getMessage()});
+                        restoreBaudRate(initialBaudRate);
+                        continue;
+                    }
+                    parameters.put(Parameter.BAUD_RATE, baudRate);
+                    LOGGER.log(Level.INFO, "Switched to {0} bauds.", baudRate);
+                    break;
+                } else {
+                    LOGGER.log(Level.FINE, "Baud rate {0} rejected.", baudRate);
+                }
+            }
+        }
+    }
+
+    /*
+     * Go back to the initial baud rate after a failed switch. The device still
+     * understands us (it is only its output we cannot read), but a serial port
+     * is reopened, resetting the device, if it doesn't answer anyway.
+     */
+    private void restoreBaudRate(int baudRate) throws IOException, InterruptedException {
+        transport.writeLine(Parameter.BAUD_RATE.getCommandLine(baudRate));
+        Thread.sleep(device.getChainedCommandDelay());
+        transport.setDataRate(baudRate);
+        try {
+            readParameters();
+        } catch (IOException e) {
+            if (endpoint instanceof SerialPort) {
+                LOGGER.log(Level.WARNING, "Reconnecting at {0} bauds.", baudRate);
+                SerialPort port = (SerialPort) endpoint;
+                disconnect();
+                endpoint = port;
+                transport = new Serial(port, baudRate);
+                Metrics.CONNECTIONS.increment();
+                if (!waitForReadyMessage()) {
+                    throw new IOException("No Girino back on " + port.getSystemPortName() + " at " + baudRate + " bauds");
+                }
+                readParameters();
+            } else {
+                throw e;
+            }
         }
+        parameters.put(Parameter.BAUD_RATE, baudRate);
     }
 
     /**
@@ -275,46 +539,136 @@ public class Girino {
      * asked.
      */
     private void applyParameters(Map<Parameter, Integer> newParameters) throws IOException, InterruptedException {
-        if (serial != null) {
-            for (Map.Entry<Parameter, Integer> entry : newParameters.entrySet()) {
-                Parameter parameter = entry.getKey();
-                Integer newValue = entry.getValue();
-
-                // We only update modified parameters.
-                if (!Objects.equals(newValue, parameters.get(parameter))) {
-                    if (device.isWritable(parameter)) {
-                        int returnedValue = parameter.apply(serial, newValue);
-                        parameters.put(parameter, returnedValue);
-                        if (!Objects.equals(newValue, parameters.get(parameter))) {
-                            throw new IOException("Change has been rejected for parameter "
-                                    + parameter.getDescription() + ": " + newValue + " =/= " + returnedValue);
-                        }
+        if (transport != null) {
+            applyChangedParameters(getChangedParameters(newParameters), false);
+        } else {
+            throw new IllegalStateException("No connection");
+        }
+    }
+
+    // We only update modified parameters.
+    private Map<Parameter, Integer> getChangedParameters(Map<Parameter, Integer> newParameters) {
+        Map<Parameter, Integer> changedParameters = new EnumMap<>(Parameter.class);
+        for (Map.Entry<Parameter, Integer> entry : newParameters.entrySet()) {
+            Parameter parameter = entry.getKey();
+            Integer newValue = entry.getValue();
+            if (!Objects.equals(newValue, parameters.get(parameter)) && device.isWritable(parameter)) {
+                changedParameters.put(parameter, newValue);
+            }
+        }
+        return changedParameters;
+    }
+
+    /*
+     * pipelinedStop: true to stop a streaming in the same burst, the echoes
+     * coming after the end of the frame being sent.
+     */
+    private void applyChangedParameters(Map<Parameter, Integer> changedParameters, boolean pipelinedStop)
+            throws IOException, InterruptedException {
+        Map<Parameter, Integer> returnedValues;
+        if (device.hasFeature(Device.Feature.PIPELINED_COMMANDS)) {
+            returnedValues = applyPipelinedParameters(changedParameters, pipelinedStop);
+        } else {
+            returnedValues = new EnumMap<>(Parameter.class);
+            for (Map.Entry<Parameter, Integer> entry : changedParameters.entrySet()) {
+                returnedValues.put(entry.getKey(), entry.getKey().apply(transport, entry.getValue()));
+            }
+        }
+        parameters.putAll(returnedValues);
+
+        List<String> rejections = new ArrayList<>();
+        for (Map.Entry<Parameter, Integer> entry : changedParameters.entrySet()) {
+            Parameter parameter = entry.getKey();
+            Integer returnedValue = returnedValues.get(parameter);
+            if (!Objects.equals(entry.getValue(), returnedValue)) {
+                rejections.add(parameter.getDescription() + ": " + entry.getValue() + " =/= " + returnedValue);
+            }
+        }
+        if (!rejections.isEmpty()) {
+            throw new IOException("Change has been rejected for parameter " + String.join(", ", rejections));
+        }
+    }
+
+    /*
+     * Send all the commands in a single burst and match the echoes afterward.
+     * When stopping a streaming, the end of the frame being sent is skipped,
+     * its last bytes sharing the line of the first echo.
+     */
+    private Map<Parameter, Integer> applyPipelinedParameters(Map<Parameter, Integer> changedParameters, boolean pipelinedStop)
+            throws IOException, InterruptedException {
+        Map<Parameter, Integer> returnedValues = new EnumMap<>(Parameter.class);
+        if (!changedParameters.isEmpty()) {
+            StringBuilder commands = new StringBuilder();
+            if (pipelinedStop) {
+                commands.append(STOP_ACQUIRING_COMMAND).append(COMMAND_TERMINATOR);
+            }
+            for (Map.Entry<Parameter, Integer> entry : changedParameters.entrySet()) {
+                commands.append(entry.getKey().getCommandLine(entry.getValue())).append(COMMAND_TERMINATOR);
+            }
+            transport.writeLine(commands.toString());
+
+            List<Parameter> pendingParameters = new ArrayList<>(changedParameters.keySet());
+            while (!pendingParameters.isEmpty()) {
+                String response = readResponse(transport);
+                if (pipelinedStop) {
+                    int echoStart = response.lastIndexOf("Setting ");
+                    if (echoStart < 0) {
+                        LOGGER.log(Level.FINE, "Skipping the end of a streamed frame.");
+                        continue;
                     }
+                    response = response.substring(echoStart);
                 }
+                String data = response;
+                String identifier = Parameter.getEchoedIdentifier(data);
+                Parameter parameter = pendingParameters.stream()
+                        .filter(p -> p.getIdentifier().equals(identifier))
+                        .findFirst()
+                        .orElseThrow(() -> new IOException("Unexpected response: " + data));
+                returnedValues.put(parameter, parameter.readEcho(data));
+                pendingParameters.remove(parameter);
             }
-        } else {
-            throw new IllegalStateException("No serial connection");
         }
+        return returnedValues;
     }
 
     public byte[] acquireData() throws Exception {
-        if (serial != null) {
+        FrameFormat frameFormat = device.getFrameFormat();
+        byte[] buffer = new byte[frameFormat.getFrameSize()];
+        return acquireData(buffer) ? buffer : null;
+    }
+
+    /**
+     * Acquire a frame into a caller-supplied buffer, typically a pooled
+     * {@link Frame}.
+     *
+     * @return true if the buffer has been filled with a valid frame, false if
+     * the received frame has been dropped (see {@link #getBadFrameCount}).
+     */
+    public boolean acquireData(byte[] buffer) throws Exception {
+        if (transport != null) {
+            stopStreaming();
             /*
              * When acquiring data in loop, give some time to the device between
              * a STOP and a START. This is the only place where two commands are
              * emitted in a row.
              */
             Thread.sleep(device.getChainedCommandDelay());
-            serial.writeLine(START_ACQUIRING_COMMAND);
+            /*
+             * The device is silent between two frames. Anything received here
+             * is a leftover of a previous frame (a trigger happening while we
+             * were cancelling it for instance).
+             */
+            int discarded = transport.discardInput();
+            if (discarded > 0) {
+                LOGGER.log(Level.WARNING, "{0} byte(s) discarded before acquiring a frame.", discarded);
+            }
+            transport.writeLine(START_ACQUIRING_COMMAND);
             /*
              * Note that the Girino reset its buffer (with zeros), meaning we won’t
              * catch a lot of the signal before the trigger if it happens too fast.
              */
             try {
-                FrameFormat frameFormat = device.getFrameFormat();
-                byte[] buffer = new byte[frameFormat.sampleCount * frameFormat.sampleSizeInBit];
-                int size = serial.readBytes(buffer);
-                return size == buffer.length ? buffer : null;
+                return readFrame(buffer);
             } finally {
                 /*
                  * We can only acquire a single buffer and need to stop / start to
@@ -322,10 +676,176 @@ public class Girino {
                  * probably a bit different during its development. In practise,
                  * this 'stop' is only required when we cancel a trigger waiting.
                  */
-                serial.writeLine(STOP_ACQUIRING_COMMAND);
+                transport.writeLine(STOP_ACQUIRING_COMMAND);
+            }
+        } else {
+            throw new IllegalStateException("No connection");
+        }
+    }
+
+    /**
+     * Acquire the next frame sent by a device streaming its frames. Streaming
+     * is started on the first call and goes on until {@link #stopStreaming}
+     * is called (or any other command is sent).
+     *
+     * @return true if the buffer has been filled with a valid frame, false if
+     * the received frame has been dropped (see {@link #getBadFrameCount}).
+     */
+    public boolean acquireStreamedData(byte[] buffer) throws Exception {
+        if (transport != null) {
+            if (!device.hasFeature(Device.Feature.STREAMING)) {
+                throw new IllegalStateException("No streaming support on " + device.getId());
+            }
+            if (!streaming) {
+                transport.discardInput();
+                transport.writeLine(START_STREAMING_COMMAND);
+                streaming = true;
+            }
+            return readFrame(buffer);
+        } else {
+            throw new IllegalStateException("No connection");
+        }
+    }
+
+    public void stopStreaming() throws IOException, InterruptedException {
+        if (transport != null && streaming) {
+            transport.writeLine(STOP_ACQUIRING_COMMAND);
+            streaming = false;
+            /*
+             * The device could be in the middle of sending a frame we are not
+             * interested in anymore.
+             */
+            Thread.sleep(device.getChainedCommandDelay());
+            transport.discardInput();
+        }
+    }
+
+    /**
+     * @return The number of corrupted frames dropped since the creation of
+     * this Girino (only detected for devices supporting the framing).
+     */
+    public long getBadFrameCount() {
+        return badFrameCount;
+    }
+
+    private boolean readFrame(byte[] buffer) throws IOException, InterruptedException {
+        long startTime = Metrics.Histogram.start();
+        boolean framing = device.hasFeature(Device.Feature.FRAMING);
+        boolean compressed = device.hasFeature(Device.Feature.COMPRESSION);
+        if (framing || streaming) {
+            readSyncHeader();
+            Metrics.TRIGGER_WAIT_TIME.recordSince(startTime);
+        }
+        if (framing) {
+            int length = readUnsignedShort();
+            if (compressed ? length > getCodec().getMaxEncodedSize() : length != buffer.length) {
+                return dropFrame("Unexpected frame length: " + length);
+            }
+            if (compressed) {
+                if (!readCompressedFrame(buffer, length)) {
+                    return dropFrame("Corrupted compressed frame");
+                }
+            } else {
+                readFully(buffer);
+            }
+            int checksum = readUnsignedShort();
+            if (checksum != Checksum.crc16(buffer, 0, buffer.length)) {
+                return dropFrame("Bad frame checksum");
+            }
+        } else if (compressed) {
+            if (!readCompressedFrame(buffer, -1)) {
+                return dropFrame("Corrupted compressed frame");
             }
         } else {
-            throw new IllegalStateException("No serial connection");
+            readFully(buffer);
+        }
+        Metrics.ACQUISITION_TIME.recordSince(startTime);
+        Metrics.ACQUIRED_FRAMES.increment();
+        return true;
+    }
+
+    /*
+     * Decode the frame as it comes, without waiting for all its bytes.
+     *
+     * length: The size of the encoded frame, or -1 if unknown, in which case
+     * we read up to the last sample.
+     */
+    private boolean readCompressedFrame(byte[] buffer, int length) throws IOException, InterruptedException {
+        DeltaRunLengthCodec codec = getCodec();
+        codec.reset();
+        for (int i = 0; length < 0 ? !codec.isComplete() : i < length; ++i) {
+            int b = transport.read();
+            if (b < 0) {
+                throw new IOException("Connection closed");
+            } else if (!codec.decode(b)) {
+                return false;
+            }
+        }
+        if (codec.isComplete()) {
+            codec.getFrame(buffer);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private DeltaRunLengthCodec getCodec() {
+        if (codec == null || codec.getFrameFormat() != device.getFrameFormat()) {
+            codec = new DeltaRunLengthCodec(device.getFrameFormat());
+        }
+        return codec;
+    }
+
+    /*
+     * The stream will be resynchronized by the next sync header search.
+     */
+    private boolean dropFrame(String reason) {
+        ++badFrameCount;
+        Metrics.DROPPED_FRAMES.increment();
+        LOGGER.log(Level.WARNING, "{0}, frame dropped ({1} so far).", new Object[]{reason, badFrameCount});
+        return false;
+    }
+
+    private void readFully(byte[] buffer) throws IOException, InterruptedException {
+        if (transport.readBytes(buffer) != buffer.length) {
+            throw new IOException("Connection closed");
+        }
+    }
+
+    private int readUnsignedShort() throws IOException, InterruptedException {
+        int high = transport.read();
+        int low = transport.read();
+        if (high < 0 || low < 0) {
+            throw new IOException("Connection closed");
+        }
+        return (high << 8) | low;
+    }
+
+    /*
+     * Skip anything up to the next frame sync header. Only a partial frame
+     * (after an interruption per instance) is expected to be skipped here.
+     */
+    private void readSyncHeader() throws IOException, InterruptedException {
+        int matched = 0;
+        int skipped = 0;
+        while (matched < FRAME_SYNC_HEADER.length) {
+            int c = transport.read();
+            if (c < 0) {
+                throw new IOException("Connection closed");
+            } else if (c == (FRAME_SYNC_HEADER[matched] & 0xFF)) {
+                ++matched;
+            } else {
+                skipped += matched;
+                if (c == (FRAME_SYNC_HEADER[0] & 0xFF)) {
+                    matched = 1;
+                } else {
+                    matched = 0;
+                    ++skipped;
+                }
+            }
+        }
+        if (skipped > 0) {
+            LOGGER.log(Level.WARNING, "{0} byte(s) skipped before frame sync header.", skipped);
         }
     }
 }
@@ -1,29 +1,32 @@
 package org.hihan.girinoscope.comm;
 
 import com.fazecast.jSerialComm.SerialPort;
-import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.hihan.girinoscope.utils.Metrics;
 
 /**
- * Reading operations are semi-interruptible here. As long as nothing as been
- * read, it can be interrupted, but once something has been read, it continues
- * up to the line / buffer completion. This behavior is here to avoid to stop
- * reading a bunch of data sent by the Girino. It does it fast enough not to
- * bother us. The only delay we want to interrupt is when nothing is coming, per
- * instance when we wait for the trigger to happen. A crossover can still occur
+ * Reading operations are semi-interruptible here. They can only be interrupted
+ * (or time out) when nothing is coming: once something has been read, a
+ * reading goes on up to the line / buffer completion as long as the data keeps
+ * flowing. This behavior is here to avoid to stop reading a bunch of data sent
+ * by the Girino. It does it fast enough not to bother us. The delays we want to
+ * interrupt are when nothing is coming, per instance when we wait for the
+ * trigger to happen, or when a line is never completed, per instance when we
+ * are not talking to a Girino at the right data rate. A crossover can still occur
  * - the trigger happening the same time the user cancel the operation - but it
  * is not likely to happen and the Girino doesn’t support a complex enough
  * protocol to prevent this kind of problem anyway. On the other hand, the
  * consequence is not fatal. We will read garbage the next time, display some
  * error to the user and move along.
  */
-public class Serial implements Closeable {
+public class Serial implements Transport {
 
     private static final Logger LOGGER = Logger.getLogger(Serial.class.getName());
 
@@ -35,26 +38,40 @@ public class Serial implements Closeable {
     /*
      * Default bits per second for COM port.
      */
-    private static final int DATA_RATE = 115200;
+    public static final int DEFAULT_DATA_RATE = 115200;
 
     /*
-     * Milliseconds to wait when no input is available.
+     * Milliseconds a read blocks when no input is available. A read returns as
+     * soon as any byte is received, so this delay only bounds the reactivity
+     * to an interruption, not the latency of the incoming data.
      */
-    private static final int READ_DELAY = 200;
+    private static final int READ_TIMEOUT = 50;
 
     private SerialPort port;
 
-    private InputStream input;
-
     private OutputStream output;
 
+    /*
+     * Bytes received from the port, but not consumed yet. Reading by chunks
+     * avoids a native call for each character of a line.
+     */
+    private final byte[] readBuffer = new byte[4096];
+
+    private int readPosition;
+
+    private int readLimit;
+
     public static List<SerialPort> enumeratePorts() {
         return Arrays.asList(SerialPort.getCommPorts());
     }
 
     public Serial(SerialPort port) throws IOException {
-        port.setComPortTimeouts(SerialPort.TIMEOUT_READ_BLOCKING, TIME_OUT, TIME_OUT);
-        port.setComPortParameters(DATA_RATE, 8, SerialPort.ONE_STOP_BIT, SerialPort.NO_PARITY);
+        this(port, DEFAULT_DATA_RATE);
+    }
+
+    public Serial(SerialPort port, int dataRate) throws IOException {
+        port.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, READ_TIMEOUT, TIME_OUT);
+        port.setComPortParameters(dataRate, 8, SerialPort.ONE_STOP_BIT, SerialPort.NO_PARITY);
         port.setFlowControl(SerialPort.FLOW_CONTROL_DISABLED);
 
         /*
@@ -66,7 +83,6 @@ public class Serial implements Closeable {
             this.port = port;
 
             output = port.getOutputStream();
-            input = port.getInputStream();
         } else {
             throw new IOException("Cannot open serial port.");
         }
@@ -78,7 +94,6 @@ public class Serial implements Closeable {
             try {
                 output.flush();
                 output.close();
-                input.close();
             } catch (IOException e) {
                 LOGGER.log(Level.WARNING, "When flushing output before closing serial.", e);
             }
@@ -87,26 +102,48 @@ public class Serial implements Closeable {
         }
     }
 
+    @Override
+    public int getDataRate() {
+        return port.getBaudRate();
+    }
+
+    /**
+     * Change the data rate of an opened connection. Anything sent but not
+     * read yet is discarded since it is likely to be garbage.
+     */
+    @Override
+    public void setDataRate(int dataRate) throws IOException {
+        output.flush();
+        port.setBaudRate(dataRate);
+        discardInput();
+        LOGGER.log(Level.FINE, "Data rate set to {0} bauds", dataRate);
+    }
+
+    @Override
     public String readLine() throws IOException, InterruptedException {
+        return readLine(0);
+    }
+
+    @Override
+    public String readLine(long timeout) throws IOException, InterruptedException {
+        long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
         StringBuilder line = new StringBuilder();
         int length = 0;
         try {
             while (true) {
-                int c;
-                if ((input.available() > 0 || line.length() > 0) && (c = input.read()) >= 0) {
-                    line.append((char) c);
-                    ++length;
-                    boolean eol = length >= 2 && line.charAt(length - 2) == '\r' && line.charAt(length - 1) == '\n';
-                    if (eol) {
-                        line.setLength(length - 2);
-                        break;
-                    }
-                } else {
-                    /*
-                     * Sleeping here allows us to be interrupted (the serial
-                     * input is not interruptible itself).
-                     */
-                    Thread.sleep(READ_DELAY);
+                int available = fillReadBuffer(deadline);
+                if (available == 0) {
+                    LOGGER.log(Level.FINE, "Read timed out");
+                    return null;
+                } else if (available < 0) {
+                    break;
+                }
+                line.append((char) (readBuffer[readPosition++] & 0xFF));
+                ++length;
+                boolean eol = length >= 2 && line.charAt(length - 2) == '\r' && line.charAt(length - 1) == '\n';
+                if (eol) {
+                    line.setLength(length - 2);
+                    break;
                 }
             }
         } catch (InterruptedException e) {
@@ -117,23 +154,18 @@ public class Serial implements Closeable {
         return line.toString();
     }
 
+    @Override
     public int readBytes(byte[] buffer) throws IOException, InterruptedException {
         int offset = 0;
         try {
             while (offset < buffer.length) {
-                if (input.available() > 0 || offset > 0) {
-                    int size = input.read(buffer, offset, buffer.length - offset);
-                    if (size < 0) {
-                        break;
-                    }
-                    offset += size;
-                } else {
-                    /*
-                     * Sleeping here allows us to be interrupted (the serial
-                     * input is not interruptible itself).
-                     */
-                    Thread.sleep(READ_DELAY);
+                if (fillReadBuffer(0) < 0) {
+                    break;
                 }
+                int size = Math.min(readLimit - readPosition, buffer.length - offset);
+                System.arraycopy(readBuffer, readPosition, buffer, offset, size);
+                readPosition += size;
+                offset += size;
             }
         } catch (InterruptedException e) {
             LOGGER.log(Level.FINE, "Read aborted");
@@ -143,10 +175,83 @@ public class Serial implements Closeable {
         return offset;
     }
 
-    public void writeLine(String line) throws IOException {
-        for (int i = 0; i < line.length(); ++i) {
-            output.write(line.charAt(i));
+    @Override
+    public int read() throws IOException, InterruptedException {
+        try {
+            if (fillReadBuffer(0) < 0) {
+                return -1;
+            }
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.FINE, "Read aborted");
+            throw e;
+        }
+        return readBuffer[readPosition++] & 0xFF;
+    }
+
+    @Override
+    public int discardInput() {
+        int discarded = readLimit - readPosition;
+        readPosition = readLimit = 0;
+        if (port != null) {
+            int available;
+            while ((available = port.bytesAvailable()) > 0) {
+                int size = port.readBytes(readBuffer, Math.min(available, readBuffer.length));
+                if (size <= 0) {
+                    break;
+                }
+                discarded += size;
+                Metrics.RECEIVED_BYTES.add(size);
+            }
+        }
+        if (discarded > 0) {
+            LOGGER.log(Level.FINE, "< {0} byte(s) discarded", discarded);
         }
+        return discarded;
+    }
+
+    /**
+     * Block until some input is available in the read buffer. Whether or not
+     * something has already been read, we only accept to be interrupted (see
+     * the class comment) or to time out when the input has stalled for a
+     * whole read timeout, not between two chunks of data.
+     *
+     * @param deadline The {@link System#nanoTime} after which we give up
+     * waiting, or 0 to wait indefinitely.
+     * @return The number of buffered bytes, 0 if the deadline has been reached
+     * or -1 if the port has been closed.
+     */
+    private int fillReadBuffer(long deadline) throws IOException, InterruptedException {
+        while (readPosition == readLimit) {
+            if (port == null) {
+                return -1;
+            }
+            /*
+             * The semi-blocking read returns as soon as a byte is received or
+             * when the read timeout expires. Checking the interrupt flag
+             * between two reads is what makes us interruptible (the serial
+             * input is not interruptible itself).
+             */
+            int size = port.readBytes(readBuffer, readBuffer.length);
+            if (size < 0) {
+                throw new IOException("Failed to read from serial port.");
+            }
+            readPosition = 0;
+            readLimit = size;
+            Metrics.RECEIVED_BYTES.add(size);
+            if (size == 0) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                } else if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+                    return 0;
+                }
+            }
+        }
+        return readLimit - readPosition;
+    }
+
+    @Override
+    public void writeLine(String line) throws IOException {
+        output.write(line.getBytes(StandardCharsets.ISO_8859_1));
         output.flush();
         LOGGER.log(Level.FINE, "> ({0})", line);
     }
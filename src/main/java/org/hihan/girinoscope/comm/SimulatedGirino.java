@@ -0,0 +1,660 @@
+package org.hihan.girinoscope.comm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.hihan.girinoscope.utils.Checksum;
+
+/**
+ * An in-process device speaking the Girino protocol (ready message, parameter
+ * dump, setters, acquisition start / stop and the supported extensions), meant
+ * to exercise and measure the whole acquisition path without any hardware.
+ * <p>
+ * There is no thread involved here: the output of the device is scheduled in
+ * time and made available to the reader at the pace allowed by the data rate
+ * (10 bits per byte), unless the link is not throttled. A new instance behaves
+ * like a device which has just been reset.
+ */
+public class SimulatedGirino implements Transport {
+
+    private static final Logger LOGGER = Logger.getLogger(SimulatedGirino.class.getName());
+
+    /*
+     * Milliseconds a read blocks when no input is scheduled at all.
+     */
+    private static final int READ_TIMEOUT = 50;
+
+    /*
+     * How many frames worth of signal are scanned to find a trigger event
+     * before giving up and triggering anyway.
+     */
+    private static final int TRIGGER_SEARCH_FRAME_COUNT = 8;
+
+    /**
+     * A simulated analog signal.
+     */
+    public interface Waveform {
+
+        /**
+         * @param time The time in seconds.
+         * @return The signal value in the [0, 1] range (the full scale of the
+         * device).
+         */
+        double valueAt(double time);
+
+        static Waveform sine(double frequency) {
+            return time -> 0.5 + 0.45 * Math.sin(2 * Math.PI * frequency * time);
+        }
+
+        static Waveform cosine(double frequency) {
+            return time -> 0.5 + 0.45 * Math.cos(2 * Math.PI * frequency * time);
+        }
+
+        static Waveform square(double frequency) {
+            return time -> (time * frequency) % 1 < 0.5 ? 0.1 : 0.9;
+        }
+    }
+
+    /*
+     * Some bytes sent by the device, starting to be received at a given time.
+     */
+    private static class Chunk {
+
+        final byte[] bytes;
+
+        final long startTime;
+
+        int position;
+
+        Chunk(byte[] bytes, long startTime) {
+            this.bytes = bytes;
+            this.startTime = startTime;
+        }
+    }
+
+    private final Device device;
+
+    private final Map<Girino.Parameter, Integer> parameters = new EnumMap<>(Girino.Parameter.class);
+
+    private final Waveform[] waveforms = {Waveform.sine(1000), Waveform.cosine(1000)};
+
+    private long triggerDelayInNanos;
+
+    private boolean throttled = true;
+
+    /*
+     * The data rate of the host side, the device one being its BAUD_RATE
+     * parameter.
+     */
+    private int dataRate;
+
+    private int maxReliableDataRate = Integer.MAX_VALUE;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition outputChanged = lock.newCondition();
+
+    private final Deque<Chunk> output = new ArrayDeque<>();
+
+    /*
+     * When the last scheduled chunk will be completely sent.
+     */
+    private long outputEndTime;
+
+    private final Map<Character, Integer> commandCounts = new HashMap<>();
+
+    private boolean streaming;
+
+    private int corruptedFrameCount;
+
+    private boolean closed;
+
+    /*
+     * Where we are in the simulated signal (in seconds).
+     */
+    private double signalTime;
+
+    public SimulatedGirino(Device device) {
+        this.device = device;
+        device.getDefaultParameters(parameters);
+        dataRate = device.getBaudRates().get(0);
+        parameters.put(Girino.Parameter.BAUD_RATE, dataRate);
+        outputEndTime = System.nanoTime();
+        sendLine(device.getReadyMessage());
+    }
+
+    public void setWaveform(int channel, Waveform waveform) {
+        lock.lock();
+        try {
+            waveforms[channel] = waveform;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Set the additional time spent waiting for a trigger event before a frame
+     * is sent back.
+     */
+    public void setTriggerDelay(long delay, TimeUnit unit) {
+        lock.lock();
+        try {
+            triggerDelayInNanos = unit.toNanos(delay);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param throttled If false, the output of the device is immediately
+     * available, whatever the data rate.
+     */
+    public void setThrottled(boolean throttled) {
+        lock.lock();
+        try {
+            this.throttled = throttled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Garble the output of the device above a given data rate, as a cable
+     * which cannot hold it would do. The commands are still understood.
+     */
+    public void setMaxReliableDataRate(int maxReliableDataRate) {
+        lock.lock();
+        try {
+            this.maxReliableDataRate = maxReliableDataRate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flip a bit in the data of the next frames sent, as a noisy line would do.
+     */
+    public void corruptFrames(int count) {
+        lock.lock();
+        try {
+            corruptedFrameCount += count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Integer getParameter(Girino.Parameter parameter) {
+        lock.lock();
+        try {
+            return parameters.get(parameter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return How many times a given command has been received so far.
+     */
+    public int getCommandCount(char command) {
+        lock.lock();
+        try {
+            return commandCounts.getOrDefault(command, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getDataRate() {
+        lock.lock();
+        try {
+            return dataRate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Change the data rate of the host side only, the device switching its
+     * own on a BAUD_RATE command. Like for the serial port, anything sent but
+     * not read yet is discarded.
+     */
+    @Override
+    public void setDataRate(int dataRate) {
+        lock.lock();
+        try {
+            this.dataRate = dataRate;
+            output.clear();
+            outputEndTime = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            output.clear();
+            outputChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void writeLine(String line) throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            LOGGER.log(Level.FINE, "> ({0})", line);
+            if (device.hasFeature(Device.Feature.PIPELINED_COMMANDS)) {
+                for (String command : line.split("\n")) {
+                    if (!command.isEmpty()) {
+                        execute(command.charAt(0), command.substring(1));
+                    }
+                }
+            } else if (!line.isEmpty()) {
+                execute(line.charAt(0), line.substring(1));
+            }
+            outputChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void execute(char command, String argument) {
+        commandCounts.merge(command, 1, Integer::sum);
+        switch (command) {
+            case 'd':
+                for (Girino.Parameter parameter : Girino.Parameter.values()) {
+                    if (device.isReadable(parameter)) {
+                        sendLine(parameter.getDescription() + ": " + parameters.get(parameter));
+                    }
+                }
+                break;
+            case 's':
+                sendFrame();
+                break;
+            case 'S':
+                streaming = false;
+                cancelPendingOutput();
+                break;
+            case 'l':
+                if (device.hasFeature(Device.Feature.STREAMING)) {
+                    streaming = true;
+                }
+                break;
+            default:
+                Girino.Parameter parameter = findWritableParameter(command);
+                if (parameter != null) {
+                    int value = parseInteger(argument);
+                    if (parameter == Girino.Parameter.THRESHOLD) {
+                        value = Math.min(value, device.getFrameFormat().sampleMaxValue);
+                    } else if (parameter == Girino.Parameter.WAIT_DURATION) {
+                        value = Math.min(value, device.getFrameFormat().sampleCount - 1);
+                    }
+                    if (parameter == Girino.Parameter.BAUD_RATE && !device.getBaudRates().contains(value)) {
+                        value = parameters.get(parameter);
+                    }
+                    // Echoed before a data rate change takes effect.
+                    sendLine(String.format("Setting %s to: %d", parameter.getIdentifier(), value));
+                    parameters.put(parameter, value);
+                } else {
+                    LOGGER.log(Level.FINE, "Unknown command: {0}", command);
+                }
+        }
+    }
+
+    /*
+     * Parse the leading digits like the atoi function used by the firmware.
+     */
+    private static int parseInteger(String text) {
+        int value = 0;
+        for (int i = 0; i < text.length() && Character.isDigit(text.charAt(i)); ++i) {
+            value = value * 10 + Character.digit(text.charAt(i), 10);
+        }
+        return value;
+    }
+
+    private Girino.Parameter findWritableParameter(char command) {
+        for (Girino.Parameter parameter : Girino.Parameter.values()) {
+            String parameterCommand = parameter.getCommand();
+            if (parameterCommand != null && parameterCommand.charAt(0) == command && device.isWritable(parameter)) {
+                return parameter;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Like the firmware, a frame being sent is not interrupted, but the one
+     * waiting for a trigger is.
+     */
+    private void cancelPendingOutput() {
+        long now = System.nanoTime();
+        while (!output.isEmpty() && output.peekLast().startTime > now) {
+            output.removeLast();
+        }
+        outputEndTime = now;
+        for (Chunk chunk : output) {
+            outputEndTime = Math.max(outputEndTime, chunk.startTime + getTransmissionTime(chunk.bytes.length));
+        }
+    }
+
+    private void sendLine(String line) {
+        send((line + "\r\n").getBytes(StandardCharsets.ISO_8859_1), 0);
+    }
+
+    private void send(byte[] bytes, long delayInNanos) {
+        int deviceDataRate = parameters.get(Girino.Parameter.BAUD_RATE);
+        if (deviceDataRate != dataRate || deviceDataRate > maxReliableDataRate) {
+            bytes = garble(bytes);
+        }
+        long startTime = Math.max(System.nanoTime() + delayInNanos, outputEndTime);
+        output.addLast(new Chunk(bytes, startTime));
+        outputEndTime = startTime + getTransmissionTime(bytes.length);
+    }
+
+    /*
+     * What the host receives when the data rates don't match, the line
+     * terminators aside to keep the reading going.
+     */
+    private static byte[] garble(byte[] bytes) {
+        byte[] garbledBytes = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; ++i) {
+            garbledBytes[i] = bytes[i] == '\r' || bytes[i] == '\n' ? bytes[i] : (byte) 0xFF;
+        }
+        return garbledBytes;
+    }
+
+    /*
+     * Send the next frame once the trigger delay is elapsed, with its header
+     * and trailer when needed.
+     */
+    private void sendFrame() {
+        FrameFormat frameFormat = device.getFrameFormat();
+        int[] values = createFrame();
+        byte[] data = new byte[frameFormat.getFrameSize()];
+        frameFormat.writeValues(values, data);
+        int checksum = Checksum.crc16(data, 0, data.length);
+        if (device.hasFeature(Device.Feature.COMPRESSION)) {
+            data = DeltaRunLengthCodec.encode(frameFormat, values);
+        }
+
+        boolean framing = device.hasFeature(Device.Feature.FRAMING);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        if (streaming || framing) {
+            frame.write(Girino.FRAME_SYNC_HEADER, 0, Girino.FRAME_SYNC_HEADER.length);
+        }
+        if (framing) {
+            frame.write(data.length >> 8);
+            frame.write(data.length);
+        }
+        if (corruptedFrameCount > 0) {
+            --corruptedFrameCount;
+            data[data.length / 2] ^= 0x10;
+        }
+        frame.write(data, 0, data.length);
+        if (framing) {
+            frame.write(checksum >> 8);
+            frame.write(checksum);
+        }
+        send(frame.toByteArray(), triggerDelayInNanos);
+    }
+
+    private long getTransmissionTime(int byteCount) {
+        return throttled ? byteCount * 10 * 1_000_000_000L / dataRate : 0;
+    }
+
+    private int[] createFrame() {
+        FrameFormat frameFormat = device.getFrameFormat();
+        int channelCount = Integer.valueOf(Girino.ChannelCompositionMode.SINGLE.value).equals(parameters.get(Girino.Parameter.CHANNEL_COMPOSITION)) ? 1 : 2;
+        int sampleCountPerChannel = frameFormat.sampleCount / channelCount;
+        double samplingPeriod = 1 / getSamplingFrequency();
+
+        int waitDuration = parameters.getOrDefault(Girino.Parameter.WAIT_DURATION, 0) / channelCount;
+        int triggerIndex = Math.max(0, Math.min(sampleCountPerChannel - 1, sampleCountPerChannel - waitDuration));
+        double triggerTime = findTrigger(signalTime + triggerIndex * samplingPeriod, samplingPeriod, sampleCountPerChannel);
+        double startTime = triggerTime - triggerIndex * samplingPeriod;
+
+        int[] values = new int[frameFormat.sampleCount];
+        for (int i = 0; i < sampleCountPerChannel; ++i) {
+            for (int channel = 0; channel < channelCount; ++channel) {
+                values[i * channelCount + channel] = toSampleValue(waveforms[channel].valueAt(startTime + i * samplingPeriod));
+            }
+        }
+        signalTime = startTime + sampleCountPerChannel * samplingPeriod;
+
+        return values;
+    }
+
+    private double getSamplingFrequency() {
+        Integer prescaler = parameters.get(Girino.Parameter.PRESCALER);
+        return device.getPrescalerInfoValues().stream()
+                .filter(info -> prescaler != null && info.value == prescaler)
+                .findFirst()
+                .orElse(device.getPrescalerInfoValues().get(0))
+                .frequency;
+    }
+
+    private int toSampleValue(double value) {
+        int maxValue = device.getFrameFormat().sampleMaxValue;
+        return (int) Math.max(0, Math.min(maxValue, Math.round(value * maxValue)));
+    }
+
+    private double findTrigger(double fromTime, double samplingPeriod, int sampleCountPerChannel) {
+        Integer mode = device.isWritable(Girino.Parameter.EXT_TRIGGER_EVENT)
+                ? parameters.get(Girino.Parameter.EXT_TRIGGER_EVENT)
+                : parameters.get(Girino.Parameter.TRIGGER_EVENT);
+        if (mode == null || mode == Girino.ExtTriggerEventMode.AUTO.value) {
+            return fromTime;
+        }
+        boolean rising = mode != Girino.TriggerEventMode.FALLING_EDGE.value;
+        boolean falling = mode != Girino.TriggerEventMode.RISING_EDGE.value;
+        int threshold = parameters.getOrDefault(Girino.Parameter.THRESHOLD, 0);
+        int previousValue = toSampleValue(waveforms[0].valueAt(fromTime));
+        for (int i = 1; i < sampleCountPerChannel * TRIGGER_SEARCH_FRAME_COUNT; ++i) {
+            double time = fromTime + i * samplingPeriod;
+            int value = toSampleValue(waveforms[0].valueAt(time));
+            if (rising && previousValue < threshold && value >= threshold
+                    || falling && previousValue >= threshold && value < threshold) {
+                return time;
+            }
+            previousValue = value;
+        }
+        return fromTime;
+    }
+
+    @Override
+    public String readLine() throws IOException, InterruptedException {
+        return readLine(0);
+    }
+
+    @Override
+    public String readLine(long timeout) throws IOException, InterruptedException {
+        long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        StringBuilder line = new StringBuilder();
+        int length = 0;
+        lock.lock();
+        try {
+            while (true) {
+                int available = awaitOutput(Integer.MAX_VALUE, length > 0, deadline);
+                if (available == 0) {
+                    return null;
+                } else if (available < 0) {
+                    break;
+                }
+                line.append((char) (output.peekFirst().bytes[output.peekFirst().position++] & 0xFF));
+                ++length;
+                boolean eol = length >= 2 && line.charAt(length - 2) == '\r' && line.charAt(length - 1) == '\n';
+                if (eol) {
+                    line.setLength(length - 2);
+                    break;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        LOGGER.log(Level.FINE, "< ({0})", line);
+        return line.toString();
+    }
+
+    @Override
+    public int readBytes(byte[] buffer) throws IOException, InterruptedException {
+        int offset = 0;
+        lock.lock();
+        try {
+            while (offset < buffer.length) {
+                int available = awaitOutput(buffer.length - offset, offset > 0, 0);
+                if (available < 0) {
+                    break;
+                }
+                Chunk chunk = output.peekFirst();
+                int size = Math.min(available, buffer.length - offset);
+                System.arraycopy(chunk.bytes, chunk.position, buffer, offset, size);
+                chunk.position += size;
+                offset += size;
+            }
+        } finally {
+            lock.unlock();
+        }
+        LOGGER.log(Level.FINE, "< {0} byte(s)", offset);
+        return offset;
+    }
+
+    @Override
+    public int read() throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            if (awaitOutput(1, false, 0) < 0) {
+                return -1;
+            }
+            Chunk chunk = output.peekFirst();
+            return chunk.bytes[chunk.position++] & 0xFF;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int discardInput() {
+        int discarded = 0;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            Chunk chunk;
+            while ((chunk = output.peekFirst()) != null) {
+                int available = getReceivedByteCount(chunk, now) - chunk.position;
+                discarded += available;
+                chunk.position += available;
+                if (chunk.position == chunk.bytes.length) {
+                    output.removeFirst();
+                } else {
+                    break;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return discarded;
+    }
+
+    /*
+     * Wait until the first chunk of the output has some bytes available. We
+     * only return when the wanted count is available or the chunk has been
+     * completely received, in order not to wake up for each byte. Like for
+     * the serial port, once something has been read, the wait is only
+     * interruptible (and bounded by the deadline) if nothing is being sent.
+     *
+     * Returns the number of bytes available in the first chunk, 0 if the
+     * deadline (a System.nanoTime(), 0 for none) has been reached before
+     * anything was available or -1 if the connection has been closed.
+     */
+    private int awaitOutput(int wantedCount, boolean started, long deadline) throws InterruptedException {
+        boolean interrupted = false;
+        try {
+            while (!closed) {
+                Chunk chunk = output.peekFirst();
+                if (chunk != null && chunk.position == chunk.bytes.length) {
+                    output.removeFirst();
+                    continue;
+                }
+                if (chunk == null && streaming) {
+                    sendFrame();
+                    continue;
+                }
+                if (chunk == null && interrupted) {
+                    // Interrupted while the data was flowing, which is over.
+                    interrupted = false;
+                    LOGGER.log(Level.FINE, "Read aborted");
+                    throw new InterruptedException();
+                }
+
+                long waitTime;
+                if (chunk != null) {
+                    long now = System.nanoTime();
+                    int remaining = chunk.bytes.length - chunk.position;
+                    int available = getReceivedByteCount(chunk, now) - chunk.position;
+                    if (available >= Math.min(wantedCount, remaining)) {
+                        return available;
+                    }
+                    int target = chunk.position + Math.min(wantedCount, remaining);
+                    waitTime = chunk.startTime + getTransmissionTime(target) - now;
+                } else {
+                    waitTime = TimeUnit.MILLISECONDS.toNanos(READ_TIMEOUT);
+                }
+
+                if (deadline != 0 && (!started || chunk == null)) {
+                    long now = System.nanoTime();
+                    if (chunk == null || getReceivedByteCount(chunk, now) == chunk.position) {
+                        if (now - deadline >= 0) {
+                            return 0;
+                        }
+                        waitTime = Math.min(waitTime, deadline - now);
+                    }
+                }
+
+                try {
+                    outputChanged.awaitNanos(Math.max(1, waitTime));
+                } catch (InterruptedException e) {
+                    if (started && output.peekFirst() != null) {
+                        interrupted = true;
+                    } else {
+                        LOGGER.log(Level.FINE, "Read aborted");
+                        throw e;
+                    }
+                }
+            }
+            return -1;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private int getReceivedByteCount(Chunk chunk, long now) {
+        if (now < chunk.startTime) {
+            return 0;
+        } else if (now - chunk.startTime >= getTransmissionTime(chunk.bytes.length)) {
+            return chunk.bytes.length;
+        } else {
+            long count = (now - chunk.startTime) * dataRate / 10 / 1_000_000_000L;
+            return (int) Math.min(chunk.bytes.length, count);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.hihan.girinoscope.comm;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The link used by {@link Girino} to talk to a device, typically a
+ * {@link Serial} connection. Reading operations are expected to follow the same
+ * semi-interruptible behavior than the serial implementation: they can be
+ * interrupted (or time out) when nothing is coming, but not while the data is
+ * flowing.
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * @return The next line without its terminating CR-LF.
+     */
+    String readLine() throws IOException, InterruptedException;
+
+    /**
+     * @param timeout Milliseconds to wait for a line (0 to wait indefinitely).
+     * A line whose characters keep coming is read up to its end, even past
+     * the timeout.
+     * @return The next line without its terminating CR-LF or null if nothing
+     * or only a partial line has been received before the timeout.
+     */
+    String readLine(long timeout) throws IOException, InterruptedException;
+
+    /**
+     * Read bytes until the buffer is filled or the connection is closed.
+     *
+     * @return The number of bytes read.
+     */
+    int readBytes(byte[] buffer) throws IOException, InterruptedException;
+
+    /**
+     * @return The next byte read or -1 if the connection has been closed.
+     */
+    int read() throws IOException, InterruptedException;
+
+    /**
+     * Drop any received byte not read yet.
+     *
+     * @return The number of discarded bytes.
+     */
+    int discardInput();
+
+    /**
+     * Send a command. Despite its name, no line terminator is added, the
+     * Girino protocol having none.
+     */
+    void writeLine(String line) throws IOException;
+
+    int getDataRate();
+
+    void setDataRate(int dataRate) throws IOException;
+}
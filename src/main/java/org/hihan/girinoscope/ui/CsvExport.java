@@ -0,0 +1,26 @@
+package org.hihan.girinoscope.ui;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Export of decoded frames as CSV, with one column per channel.
+ */
+final class CsvExport {
+
+    static void write(int[][] channels, Writer writer) throws IOException {
+        String lineSeparator = System.lineSeparator();
+        for (int i = 0; i < channels[0].length; ++i) {
+            for (int channel = 0; channel < channels.length; ++channel) {
+                if (channel > 0) {
+                    writer.write(',');
+                }
+                writer.write(Integer.toString(channels[channel][i]));
+            }
+            writer.write(lineSeparator);
+        }
+    }
+
+    private CsvExport() {
+    }
+}
@@ -0,0 +1,104 @@
+package org.hihan.girinoscope.ui;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.swing.Timer;
+import org.hihan.girinoscope.utils.Metrics;
+
+/**
+ * Display the acquired frames at a given refresh rate, whatever the
+ * acquisition rate. The acquisition only queues its frames, never waiting for
+ * the display, which drains the queue at each refresh and only displays the
+ * last frame. The other ones are said to be coalesced.
+ *
+ * @param <T> A frame, or a set of frames displayed together.
+ */
+final class DisplayScheduler<T> {
+
+    private final Supplier<T> frameSource;
+
+    private final Consumer<T> displayedFrameConsumer;
+
+    private final Consumer<T> coalescedFrameConsumer;
+
+    private final Consumer<T> frameReleaser;
+
+    private final Timer timer;
+
+    private long coalescedFrameCount;
+
+    /**
+     * @param frameSource Polled on the EDT for the acquired frames, returning
+     * null when there is no more of them.
+     * @param displayedFrameConsumer Called on the EDT with the frame to
+     * display, which it is responsible for releasing afterward.
+     * @param coalescedFrameConsumer Called on the EDT with each coalesced frame
+     * before it is released.
+     * @param frameReleaser Release a frame no longer used (see
+     * {@link org.hihan.girinoscope.comm.Frame#release}).
+     */
+    DisplayScheduler(int refreshRate, Supplier<T> frameSource, Consumer<T> displayedFrameConsumer, Consumer<T> coalescedFrameConsumer, Consumer<T> frameReleaser) {
+        this.frameSource = frameSource;
+        this.displayedFrameConsumer = displayedFrameConsumer;
+        this.coalescedFrameConsumer = coalescedFrameConsumer;
+        this.frameReleaser = frameReleaser;
+        this.timer = new Timer(getPeriod(refreshRate), event -> refresh());
+    }
+
+    private static int getPeriod(int refreshRate) {
+        if (refreshRate < 1 || refreshRate > 1000) {
+            throw new IllegalArgumentException("refreshRate: " + refreshRate);
+        }
+        return 1000 / refreshRate;
+    }
+
+    /**
+     * @param refreshRate The number of refreshes per second.
+     */
+    void setRefreshRate(int refreshRate) {
+        timer.setDelay(getPeriod(refreshRate));
+    }
+
+    /**
+     * Start the refreshes, to be called from the EDT.
+     */
+    void start() {
+        T staleFrame;
+        while ((staleFrame = frameSource.get()) != null) {
+            frameReleaser.accept(staleFrame);
+        }
+        coalescedFrameCount = 0;
+        timer.start();
+    }
+
+    /**
+     * Stop the refreshes, the last frame acquired being displayed right away.
+     * To be called from the EDT.
+     */
+    void stop() {
+        timer.stop();
+        refresh();
+    }
+
+    /**
+     * @return The number of frames coalesced since the last start.
+     */
+    long getCoalescedFrameCount() {
+        return coalescedFrameCount;
+    }
+
+    private void refresh() {
+        T frame = frameSource.get();
+        if (frame != null) {
+            T nextFrame;
+            while ((nextFrame = frameSource.get()) != null) {
+                ++coalescedFrameCount;
+                Metrics.COALESCED_FRAMES.increment();
+                coalescedFrameConsumer.accept(frame);
+                frameReleaser.accept(frame);
+                frame = nextFrame;
+            }
+            displayedFrameConsumer.accept(frame);
+        }
+    }
+}
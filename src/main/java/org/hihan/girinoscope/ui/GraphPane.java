@@ -13,27 +13,34 @@ import java.awt.RenderingHints;
 import java.awt.Stroke;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import org.hihan.girinoscope.comm.FrameFormat;
 import org.hihan.girinoscope.comm.Girino;
 import org.hihan.girinoscope.ui.Axis.GraphLabel;
+import org.hihan.girinoscope.utils.Metrics;
 
 @SuppressWarnings("serial")
 public class GraphPane extends JPanel {
 
+    public static final String THRESHOLD_PROPERTY_NAME = "threshold";
+
+    public static final String WAIT_DURATION_PROPERTY_NAME = "waitDuration";
+
     private static final Color DIVISION_COLOR = new Color(0xbcbcbc);
 
     private static final Color SUB_DIVISION_COLOR = new Color(0xcdcdcd);
 
     private static final Color TEXT_COLOR = new Color(0x9a9a9a);
 
-    private static final Color[] DATA_COLORS = {Color.CYAN.darker(), Color.ORANGE};
-
-    private static final Color XY_DATA_COLOR = Color.MAGENTA;
-
     private static final Color THRESHOLD_COLOR = Color.ORANGE.darker();
 
     private static final Color WAIT_DURATION_COLOR = Color.GREEN.darker();
@@ -58,8 +65,46 @@ public class GraphPane extends JPanel {
 
     private byte[] data;
 
+    /*
+     * The decoded data, one array per channel, reused from one frame to another
+     * and only updated when needed (the data could be painted several times).
+     */
+    private int[][] channels = new int[0][];
+
+    private boolean valuesDecoded;
+
     private Rectangle graphArea;
 
+    /*
+     * The cached grid and labels, null when they need to be repainted.
+     */
+    private BufferedImage background;
+
+    /*
+     * The fraction of the trace intensity kept from one frame to the next, 0
+     * when the persistence is disabled (read by the acquisition thread too).
+     */
+    private volatile double persistence;
+
+    /*
+     * The traces are rendered in their own thread, the EDT only painting the
+     * last rendered image over the grid.
+     */
+    private final TraceRenderer traceRenderer;
+
+    /*
+     * The scene of the last rendering request.
+     */
+    private TraceRenderer.Scene scene;
+
+    /*
+     * Once the data stop changing, the last ones are rendered again, in the
+     * highest quality if it was not the case.
+     */
+    private static final int REFINEMENT_DELAY = 250;
+
+    private final Timer refinementTimer = new Timer(REFINEMENT_DELAY, event -> refine());
+
     private boolean triggerEnabled;
 
     private int threshold;
@@ -76,6 +121,19 @@ public class GraphPane extends JPanel {
     private Rule grabbedRule;
 
     public GraphPane() {
+        this(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Trace renderer");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param renderingExecutor A single threaded executor to render the traces.
+     */
+    GraphPane(Executor renderingExecutor) {
+        traceRenderer = new TraceRenderer(renderingExecutor, this::repaint);
+        refinementTimer.setRepeats(false);
         super.addMouseMotionListener(new MouseMotionListener() {
 
             private final int HAND_RADIUS = 16;
@@ -151,7 +209,9 @@ public class GraphPane extends JPanel {
     }
 
     public void setThreshold(int threshold) {
+        int oldThreshold = this.threshold;
         this.threshold = threshold;
+        firePropertyChange(THRESHOLD_PROPERTY_NAME, oldThreshold, threshold);
         repaint();
     }
 
@@ -166,13 +226,17 @@ public class GraphPane extends JPanel {
                 xAxis = xAxisBackup;
                 uMax = uMaxBackup;
             }
+            background = null;
         }
         this.channelCompositionMode = channelCompositionMode;
+        valuesDecoded = false;
         repaint();
     }
 
     public void setWaitDuration(int waitDuration) {
+        int oldWaitDuration = this.waitDuration;
         this.waitDuration = waitDuration;
+        firePropertyChange(WAIT_DURATION_PROPERTY_NAME, oldWaitDuration, waitDuration);
         repaint();
     }
 
@@ -181,6 +245,43 @@ public class GraphPane extends JPanel {
         repaint();
     }
 
+    /**
+     * Enable a persistence mode where the traces of the successive frames are
+     * accumulated instead of replaced, the most frequent ones appearing the
+     * brightest.
+     *
+     * @param retention The fraction of the trace intensity kept from one
+     * frame to the next, 0 to disable the persistence and 1 for an infinite
+     * one.
+     */
+    public void setPersistence(double retention) {
+        if (retention < 0 || retention > 1) {
+            throw new IllegalArgumentException("retention: " + retention);
+        }
+        persistence = retention;
+        repaint();
+    }
+
+    /**
+     * @param refreshRate The number of new data displayed per second, giving
+     * the time available to render them.
+     */
+    public void setRefreshRate(int refreshRate) {
+        traceRenderer.setBudget(TimeUnit.SECONDS.toNanos(1) / refreshRate);
+    }
+
+    /**
+     * @return true if the traces are currently rendered in a reduced quality
+     * to keep up with the refresh rate.
+     */
+    public boolean isRenderingQualityReduced() {
+        return traceRenderer.getQuality() != QualityGovernor.Quality.HIGH;
+    }
+
+    public void clearPersistence() {
+        traceRenderer.clearPersistence();
+    }
+
     public void setCoordinateSystem(Axis xAxis, Axis yAxis) {
         if (isXY(channelCompositionMode)) {
             xAxisBackup = xAxis;
@@ -189,6 +290,7 @@ public class GraphPane extends JPanel {
             this.xAxis = xAxis;
         }
         this.yAxis = yAxis;
+        background = null;
         repaint();
     }
 
@@ -197,6 +299,7 @@ public class GraphPane extends JPanel {
             xAxisBackup = xAxis;
         } else {
             this.xAxis = xAxis;
+            background = null;
             repaint();
         }
     }
@@ -206,11 +309,14 @@ public class GraphPane extends JPanel {
             xAxis = yAxis;
         }
         this.yAxis = yAxis;
+        background = null;
         repaint();
     }
 
     public void setFrameFormat(FrameFormat frameFormat) {
         this.frameFormat = frameFormat;
+        valuesDecoded = false;
+        background = null;
         uMax = frameFormat.sampleCount - 1;
         vMax = frameFormat.sampleMaxValue;
         if (isXY(channelCompositionMode)) {
@@ -221,15 +327,58 @@ public class GraphPane extends JPanel {
 
     public void setData(byte[] data) {
         this.data = data;
-        repaint();
+        valuesDecoded = false;
+        if (scene != null) {
+            traceRenderer.render(scene, data, true);
+        } else {
+            repaint();
+        }
+        refinementTimer.restart();
+    }
+
+    private void refine() {
+        if (scene != null && isRenderingQualityReduced()) {
+            traceRenderer.render(scene, data, false);
+        }
+    }
+
+    /**
+     * Accumulate some data in the persistence rasters without displaying it,
+     * for the frames which are skipped when the display cannot keep up. Does
+     * nothing when the persistence is disabled. Unlike the other methods, it
+     * could be called from any thread.
+     */
+    public void accumulate(byte[] data) {
+        if (persistence > 0) {
+            traceRenderer.accumulate(data);
+        }
     }
 
     public byte[] getData() {
         return data;
     }
 
-    public int[] getValues() {
-        return frameFormat.readValues(data);
+    /**
+     * @return The decoded values of the current data, one array per channel.
+     * The returned arrays are reused between frames and shall not be modified.
+     */
+    public int[][] getChannels() {
+        if (!valuesDecoded) {
+            int channelCount = getChannelCount();
+            int valueCount = frameFormat.getSampleCount(data) / channelCount;
+            if (channels.length != channelCount || channels[0].length != valueCount) {
+                channels = new int[channelCount][valueCount];
+            }
+            long startTime = Metrics.Histogram.start();
+            frameFormat.readChannels(data, channels);
+            Metrics.DECODE_TIME.recordSince(startTime);
+            valuesDecoded = true;
+        }
+        return channels;
+    }
+
+    private int getChannelCount() {
+        return channelCompositionMode != null ? channelCompositionMode.getChannelCount() : 1;
     }
 
     public int getThreshold() {
@@ -246,6 +395,7 @@ public class GraphPane extends JPanel {
 
     @Override
     protected void paintComponent(Graphics g) {
+        long startTime = Metrics.Histogram.start();
         Graphics2D g2d = (Graphics2D) g;
 
         // Performance issues on Linux without an explicit -Dsun.java2d.opengl=true.
@@ -255,9 +405,6 @@ public class GraphPane extends JPanel {
         int w = getWidth();
         int h = getHeight();
 
-        g2d.setColor(Color.WHITE);
-        g2d.fillRect(0, 0, w, h);
-
         if (xAxis != null && yAxis != null) {
             xAxis.complete(g2d, FONT);
             yAxis.complete(g2d, FONT);
@@ -268,10 +415,9 @@ public class GraphPane extends JPanel {
             graphArea.height -= xAxis.getMaxBounds().height + labelInsets.top + labelInsets.bottom;
 
             if (w > 0 && h > 0) {
-                paintXAxis(g2d, labelInsets);
-                paintYAxis(g2d, labelInsets);
+                g2d.drawImage(getGridImage(g2d, w, h, labelInsets), 0, 0, w, h, null);
                 if (data != null) {
-                    paintData(g2d);
+                    paintData(g2d, w, h);
                 }
                 if (!isXY(channelCompositionMode)) {
                     paintWaitDurationRule(g2d);
@@ -280,7 +426,39 @@ public class GraphPane extends JPanel {
                     paintThresholdRule(g2d);
                 }
             }
+        } else {
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(0, 0, w, h);
+        }
+        Metrics.PAINT_TIME.recordSince(startTime);
+    }
+
+    /*
+     * The grid and its labels only change with the axes or the size, not with
+     * the data. They are painted once in an image (at the device resolution)
+     * which is simply copied afterward. The rules are not part of it since
+     * they are above the traces and could be dragged.
+     */
+    private BufferedImage getGridImage(Graphics2D g, int w, int h, Insets labelInsets) {
+        AffineTransform transform = g.getTransform();
+        int imageWidth = (int) Math.ceil(w * transform.getScaleX());
+        int imageHeight = (int) Math.ceil(h * transform.getScaleY());
+        if (background == null || background.getWidth() != imageWidth || background.getHeight() != imageHeight) {
+            background = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D bg = background.createGraphics();
+            try {
+                bg.setRenderingHints(g.getRenderingHints());
+                bg.setFont(g.getFont());
+                bg.scale(transform.getScaleX(), transform.getScaleY());
+                bg.setColor(Color.WHITE);
+                bg.fillRect(0, 0, w, h);
+                paintXAxis(bg, labelInsets);
+                paintYAxis(bg, labelInsets);
+            } finally {
+                bg.dispose();
+            }
         }
+        return background;
     }
 
     private void paintXAxis(Graphics2D g, Insets labelInsets) {
@@ -337,52 +515,21 @@ public class GraphPane extends JPanel {
         g.translate(-graphArea.x, -graphArea.y);
     }
 
-    private void paintData(Graphics2D g) {
-        if (isXY(channelCompositionMode)) {
-            paintDataXY(g);
-        } else {
-            paintMultiChannelData(g, channelCompositionMode.value);
+    /*
+     * The traces are only rendered again when something has changed, the data
+     * or the way they are displayed, the last rendered traces being displayed
+     * meanwhile.
+     */
+    private void paintData(Graphics2D g, int w, int h) {
+        AffineTransform transform = g.getTransform();
+        TraceRenderer.Scene newScene = new TraceRenderer.Scene(frameFormat, channelCompositionMode,
+                w, h, transform.getScaleX(), transform.getScaleY(),
+                graphArea, uMax, vMax, dataStroke, persistence);
+        if (!newScene.equals(scene)) {
+            scene = newScene;
+            traceRenderer.render(scene, data, false);
         }
-    }
-
-    private void paintMultiChannelData(Graphics2D g, int channelCount) {
-        Stroke defaultStroke = g.getStroke();
-        g.setStroke(dataStroke);
-        int[] values = getValues();
-        for (int channel = 0; channel < channelCount; ++channel) {
-            g.setColor(DATA_COLORS[channel % DATA_COLORS.length]);
-            int u = uMax;
-            Point previousPoint = null;
-            for (int i = channel; i < values.length; i += channelCount) {
-                int v = values[i];
-                assert v >= 0 && v <= frameFormat.sampleMaxValue;
-                Point point = toGraphArea(u, v);
-                u -= channelCount;
-                if (previousPoint != null) {
-                    g.drawLine(previousPoint.x, previousPoint.y, point.x, point.y);
-                }
-                previousPoint = point;
-            }
-        }
-        g.setStroke(defaultStroke);
-    }
-
-    private void paintDataXY(Graphics2D g) {
-        Stroke defaultStroke = g.getStroke();
-        g.setStroke(dataStroke);
-        g.setColor(XY_DATA_COLOR);
-        Point previousPoint = null;
-        int[] values = getValues();
-        for (int i = 0; i < values.length; i += 2) {
-            int u = uMax - values[i];
-            int v = values[i + 1];
-            Point point = toGraphArea(u, v);
-            if (previousPoint != null) {
-                g.drawLine(previousPoint.x, previousPoint.y, point.x, point.y);
-            }
-            previousPoint = point;
-        }
-        g.setStroke(defaultStroke);
+        traceRenderer.paint(g);
     }
 
     private void paintThresholdRule(Graphics2D g) {
@@ -422,9 +569,15 @@ public class GraphPane extends JPanel {
     }
 
     private Point toGraphArea(int u, int v) {
-        int x = Math.round((uMax - u) * graphArea.width / uMax + graphArea.x);
-        int y = Math.round((vMax - v) * graphArea.height / vMax + graphArea.y);
-        return new Point(x, y);
+        return new Point(toX(u), toY(v));
+    }
+
+    private int toX(int u) {
+        return (uMax - u) * graphArea.width / uMax + graphArea.x;
+    }
+
+    private int toY(int v) {
+        return (vMax - v) * graphArea.height / vMax + graphArea.y;
     }
 
     private Point toData(int x, int y) {
@@ -0,0 +1,131 @@
+package org.hihan.girinoscope.ui;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * An intensity buffer accumulating the traces of successive frames, like the
+ * phosphor of an analog oscilloscope. Each frame adds hits on the pixels its
+ * trace goes through, after the previous hits have decayed. Nothing is
+ * allocated while accumulating, the colour mapping only being done when
+ * painting.
+ */
+final class PersistenceRaster {
+
+    /*
+     * The hits are in fixed point (8 bits) to decay smoothly.
+     */
+    private static final int HIT = 256;
+
+    /*
+     * Number of (undecayed) hits giving the full intensity.
+     */
+    private static final int SATURATION = 8;
+
+    private static final int PALETTE_SIZE = 256;
+
+    final int width;
+
+    final int height;
+
+    private final int[] hits;
+
+    private final BufferedImage image;
+
+    private final int[] pixels;
+
+    PersistenceRaster(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.hits = new int[width * height];
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * A transparent to opaque ramp of the given colour, with a square root
+     * response to keep a single hit visible.
+     */
+    static int[] createPalette(Color color) {
+        int[] palette = new int[PALETTE_SIZE];
+        int rgb = color.getRGB() & 0xFFFFFF;
+        for (int i = 0; i < PALETTE_SIZE; ++i) {
+            int alpha = (int) Math.round(255 * Math.sqrt(i / (PALETTE_SIZE - 1.0)));
+            palette[i] = alpha << 24 | rgb;
+        }
+        return palette;
+    }
+
+    void clear() {
+        Arrays.fill(hits, 0);
+    }
+
+    /**
+     * @param retention The fraction of the hits to keep, between 0 and 1.
+     */
+    void decay(double retention) {
+        int factor = (int) Math.round(retention * 256);
+        if (factor < 256) {
+            for (int i = 0; i < hits.length; ++i) {
+                hits[i] = hits[i] * factor >>> 8;
+            }
+        }
+    }
+
+    /**
+     * Add a hit on each pixel of a segment, the first one excepted when the
+     * segment continues a previous one.
+     */
+    void addLine(int x0, int y0, int x1, int y1, boolean continued) {
+        int dx = Math.abs(x1 - x0);
+        int dy = Math.abs(y1 - y0);
+        int sx = x0 < x1 ? 1 : -1;
+        int sy = y0 < y1 ? 1 : -1;
+        int error = dx - dy;
+        int x = x0;
+        int y = y0;
+        boolean first = true;
+        while (true) {
+            if (!(first && continued)) {
+                addHit(x, y);
+            }
+            first = false;
+            if (x == x1 && y == y1) {
+                break;
+            }
+            int e2 = 2 * error;
+            if (e2 > -dy) {
+                error -= dy;
+                x += sx;
+            }
+            if (e2 < dx) {
+                error += dx;
+                y += sy;
+            }
+        }
+    }
+
+    private void addHit(int x, int y) {
+        if (x >= 0 && x < width && y >= 0 && y < height) {
+            int i = y * width + x;
+            // No overflow in practice, but an infinite persistence could run for days.
+            hits[i] = Math.min(hits[i] + HIT, Integer.MAX_VALUE - HIT);
+        }
+    }
+
+    /**
+     * Map the hits to colours.
+     *
+     * @return An image of the raster, only valid up to the next call.
+     */
+    BufferedImage render(int[] palette) {
+        int scale = HIT * SATURATION / PALETTE_SIZE;
+        for (int i = 0; i < hits.length; ++i) {
+            int hit = hits[i];
+            pixels[i] = hit == 0 ? 0 : palette[Math.min(PALETTE_SIZE - 1, Math.max(1, hit / scale))];
+        }
+        return image;
+    }
+}
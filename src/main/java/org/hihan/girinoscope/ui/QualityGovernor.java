@@ -0,0 +1,87 @@
+package org.hihan.girinoscope.ui;
+
+/**
+ * Choose, for each frame, the best rendering quality keeping the rendering
+ * time within a budget, based on the time the previous renderings took at
+ * each quality. Not thread safe.
+ */
+final class QualityGovernor {
+
+    enum Quality {
+
+        /**
+         * Antialiased traces with the selected stroke.
+         */
+        HIGH(true, false),
+        /**
+         * Aliased traces with the selected stroke.
+         */
+        ALIASED(false, false),
+        /**
+         * Aliased traces with a 1 pixel stroke.
+         */
+        DRAFT(false, true);
+
+        final boolean antialiased;
+
+        final boolean thinStroke;
+
+        Quality(boolean antialiased, boolean thinStroke) {
+            this.antialiased = antialiased;
+            this.thinStroke = thinStroke;
+        }
+    }
+
+    /*
+     * Weight of a new measure in the estimated rendering time, when lower than
+     * the current estimate (a longer time being taken as is to react fast).
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /*
+     * The estimates of the better qualities, no longer measured once we have
+     * fallen back to a lower one, slowly decrease to give them a new chance
+     * from time to time.
+     */
+    private static final double OBLIVION = 0.98;
+
+    private final double[] estimatedTimes = new double[Quality.values().length];
+
+    private long budget;
+
+    /**
+     * @param budget The time, in nanoseconds, a rendering should not exceed.
+     */
+    void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @param dynamic false if the data is not expected to change soon, the
+     * rendering being done once and for all in the highest quality.
+     */
+    Quality choose(boolean dynamic) {
+        if (dynamic) {
+            for (Quality quality : Quality.values()) {
+                if (estimatedTimes[quality.ordinal()] <= budget) {
+                    return quality;
+                }
+            }
+            return Quality.DRAFT;
+        } else {
+            return Quality.HIGH;
+        }
+    }
+
+    /**
+     * @param time The time, in nanoseconds, taken by a rendering done in the
+     * given quality.
+     */
+    void record(Quality quality, long time) {
+        int index = quality.ordinal();
+        estimatedTimes[index] = Math.max(time, estimatedTimes[index] * (1 - SMOOTHING) + time * SMOOTHING);
+        for (int i = 0; i < index; ++i) {
+            estimatedTimes[i] *= OBLIVION;
+        }
+    }
+}
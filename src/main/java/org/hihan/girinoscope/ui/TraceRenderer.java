@@ -0,0 +1,546 @@
+package org.hihan.girinoscope.ui;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.hihan.girinoscope.comm.FrameFormat;
+import org.hihan.girinoscope.comm.Girino;
+import org.hihan.girinoscope.ui.QualityGovernor.Quality;
+import org.hihan.girinoscope.utils.Metrics;
+
+/**
+ * Rasterise the traces into an image, off the EDT, the {@link GraphPane} only
+ * copying the last one rendered when painting. Two images are used in turn:
+ * one being rendered while the other one is displayed.
+ * <p>
+ * Rendering requests are coalesced: only the last data submitted is rendered,
+ * the skipped ones being only accumulated when the persistence is enabled.
+ * <p>
+ * New data are rendered in the best quality fitting in the rendering budget,
+ * the same data rendered again always being in the highest quality.
+ */
+final class TraceRenderer {
+
+    private static final Logger LOGGER = Logger.getLogger(TraceRenderer.class.getName());
+
+    private static final Color[] DATA_COLORS = {Color.CYAN.darker(), Color.ORANGE};
+
+    private static final Color XY_DATA_COLOR = Color.MAGENTA;
+
+    private static final int[][] DATA_PALETTES = new int[DATA_COLORS.length][];
+
+    static {
+        for (int i = 0; i < DATA_COLORS.length; ++i) {
+            DATA_PALETTES[i] = PersistenceRaster.createPalette(DATA_COLORS[i]);
+        }
+    }
+
+    private static final int[] XY_DATA_PALETTE = PersistenceRaster.createPalette(XY_DATA_COLOR);
+
+    private static final Stroke THIN_STROKE = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL);
+
+    /*
+     * Beyond this, skipped frames are no longer accumulated until the renderer
+     * catches up.
+     */
+    private static final int MAX_SKIPPED_FRAMES = 64;
+
+    /**
+     * Everything, except the data, defining how the traces are rendered.
+     */
+    static final class Scene {
+
+        final FrameFormat frameFormat;
+
+        final Girino.ChannelCompositionMode channelCompositionMode;
+
+        /*
+         * The size of the whole component and the scale to the device.
+         */
+        final int width, height;
+
+        final double scaleX, scaleY;
+
+        final Rectangle graphArea;
+
+        final int uMax, vMax;
+
+        final Stroke dataStroke;
+
+        final double persistence;
+
+        Scene(FrameFormat frameFormat, Girino.ChannelCompositionMode channelCompositionMode,
+                int width, int height, double scaleX, double scaleY,
+                Rectangle graphArea, int uMax, int vMax, Stroke dataStroke, double persistence) {
+            this.frameFormat = frameFormat;
+            this.channelCompositionMode = channelCompositionMode;
+            this.width = width;
+            this.height = height;
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.graphArea = new Rectangle(graphArea);
+            this.uMax = uMax;
+            this.vMax = vMax;
+            this.dataStroke = dataStroke;
+            this.persistence = persistence;
+        }
+
+        boolean isXY() {
+            return channelCompositionMode == Girino.ChannelCompositionMode.XY;
+        }
+
+        int getChannelCount() {
+            return channelCompositionMode != null ? channelCompositionMode.getChannelCount() : 1;
+        }
+
+        int toX(int u) {
+            return (uMax - u) * graphArea.width / uMax + graphArea.x;
+        }
+
+        int toY(int v) {
+            return (vMax - v) * graphArea.height / vMax + graphArea.y;
+        }
+
+        /*
+         * Accumulated traces are only valid as long as the data are mapped to
+         * the same pixels.
+         */
+        boolean hasSameMapping(Scene other) {
+            return other != null
+                    && frameFormat == other.frameFormat
+                    && channelCompositionMode == other.channelCompositionMode
+                    && graphArea.equals(other.graphArea)
+                    && uMax == other.uMax
+                    && vMax == other.vMax;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Scene)) {
+                return false;
+            }
+            Scene other = (Scene) obj;
+            return hasSameMapping(other)
+                    && width == other.width
+                    && height == other.height
+                    && scaleX == other.scaleX
+                    && scaleY == other.scaleY
+                    && dataStroke.equals(other.dataStroke)
+                    && persistence == other.persistence;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(frameFormat, channelCompositionMode, width, height, graphArea, dataStroke, persistence);
+        }
+    }
+
+    private final Executor executor;
+
+    private final Runnable renderedCallback;
+
+    /*
+     * The pending request, guarded by this.
+     */
+    private Scene pendingScene;
+
+    private byte[] pendingData;
+
+    private boolean pendingNewData;
+
+    private boolean clearRequested;
+
+    private final ArrayDeque<byte[]> skippedFrames = new ArrayDeque<>();
+
+    private final ArrayDeque<byte[]> freeBuffers = new ArrayDeque<>();
+
+    private boolean scheduled;
+
+    /*
+     * The renderer state, only used by the rendering thread.
+     */
+    private byte[] data = new byte[0];
+
+    private final ArrayDeque<byte[]> framesToAccumulate = new ArrayDeque<>();
+
+    private int[][] channels = new int[0][];
+
+    private int[] xPoints = new int[0], yPoints = new int[0];
+
+    private Scene persistenceScene;
+
+    private PersistenceRaster[] persistenceRasters = new PersistenceRaster[0];
+
+    private BufferedImage backImage;
+
+    private final QualityGovernor governor = new QualityGovernor();
+
+    /*
+     * No budget (thus the highest quality) until told otherwise.
+     */
+    private volatile long budget = Long.MAX_VALUE;
+
+    private volatile Quality quality = Quality.HIGH;
+
+    /*
+     * The image to display, guarded by frontLock.
+     */
+    private final Object frontLock = new Object();
+
+    private BufferedImage frontImage;
+
+    private Scene frontScene;
+
+    /**
+     * @param executor The executor running the rendering, expected to be
+     * single threaded.
+     * @param renderedCallback Called (from the rendering thread) each time a
+     * new image is available.
+     */
+    TraceRenderer(Executor executor, Runnable renderedCallback) {
+        this.executor = executor;
+        this.renderedCallback = renderedCallback;
+    }
+
+    /**
+     * Render some data, which are copied and could be reused as soon as this
+     * method returns.
+     *
+     * @param newData false if the data are the ones already submitted and only
+     * the scene has changed (they are not accumulated a second time).
+     */
+    synchronized void render(Scene scene, byte[] data, boolean newData) {
+        pendingScene = scene;
+        if (pendingData == null || pendingData.length != data.length) {
+            pendingData = new byte[data.length];
+        }
+        System.arraycopy(data, 0, pendingData, 0, data.length);
+        pendingNewData |= newData;
+        schedule();
+    }
+
+    /**
+     * Accumulate some data in the persistence rasters without displaying it.
+     * The data are copied too.
+     */
+    synchronized void accumulate(byte[] data) {
+        if (skippedFrames.size() < MAX_SKIPPED_FRAMES) {
+            byte[] buffer = freeBuffers.poll();
+            if (buffer == null || buffer.length != data.length) {
+                buffer = new byte[data.length];
+            }
+            System.arraycopy(data, 0, buffer, 0, data.length);
+            skippedFrames.add(buffer);
+        }
+    }
+
+    synchronized void clearPersistence() {
+        clearRequested = true;
+        if (pendingScene != null) {
+            schedule();
+        }
+    }
+
+    /**
+     * @param budget The time, in nanoseconds, a rendering of new data should
+     * not exceed.
+     */
+    void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return The quality of the last rendering.
+     */
+    Quality getQuality() {
+        return quality;
+    }
+
+    private void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            executor.execute(this::renderPending);
+        }
+    }
+
+    /**
+     * Copy the last rendered image, if any.
+     */
+    void paint(Graphics2D g) {
+        synchronized (frontLock) {
+            if (frontImage != null) {
+                g.drawImage(frontImage, 0, 0, frontScene.width, frontScene.height, null);
+            }
+        }
+    }
+
+    private void renderPending() {
+        try {
+            Scene scene;
+            boolean newData;
+            boolean clear;
+            synchronized (this) {
+                scene = pendingScene;
+                if (data.length != pendingData.length) {
+                    data = new byte[pendingData.length];
+                }
+                System.arraycopy(pendingData, 0, data, 0, data.length);
+                newData = pendingNewData;
+                pendingNewData = false;
+                clear = clearRequested;
+                clearRequested = false;
+                framesToAccumulate.addAll(skippedFrames);
+                skippedFrames.clear();
+                scheduled = false;
+            }
+
+            governor.setBudget(budget);
+            Quality newQuality = governor.choose(newData);
+            if (newQuality != quality) {
+                LOGGER.log(Level.FINE, "Rendering quality changed to {0}.", newQuality);
+                quality = newQuality;
+            }
+            if (newQuality != Quality.HIGH) {
+                Metrics.REDUCED_QUALITY_RENDERINGS.increment();
+            }
+
+            long startTime = Metrics.Histogram.start();
+            if (scene.persistence > 0) {
+                if (!scene.hasSameMapping(persistenceScene)) {
+                    persistenceRasters = createPersistenceRasters(scene);
+                    persistenceScene = scene;
+                    newData = true;
+                } else if (clear) {
+                    for (PersistenceRaster raster : persistenceRasters) {
+                        raster.clear();
+                    }
+                }
+                for (byte[] frame : framesToAccumulate) {
+                    accumulate(scene, frame);
+                }
+                if (newData) {
+                    accumulate(scene, data);
+                }
+            } else {
+                persistenceRasters = new PersistenceRaster[0];
+                persistenceScene = null;
+            }
+            recycle(framesToAccumulate);
+
+            BufferedImage image = paint(scene, newQuality);
+            synchronized (frontLock) {
+                backImage = frontImage;
+                frontImage = image;
+                frontScene = scene;
+            }
+            governor.record(newQuality, System.nanoTime() - startTime);
+            Metrics.RENDER_TIME.recordSince(startTime);
+            renderedCallback.run();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "When rendering the traces.", e);
+        }
+    }
+
+    private void recycle(ArrayDeque<byte[]> buffers) {
+        synchronized (this) {
+            freeBuffers.addAll(buffers);
+        }
+        buffers.clear();
+    }
+
+    private BufferedImage paint(Scene scene, Quality quality) {
+        int imageWidth = (int) Math.ceil(scene.width * scene.scaleX);
+        int imageHeight = (int) Math.ceil(scene.height * scene.scaleY);
+        BufferedImage image = backImage;
+        if (image == null || image.getWidth() != imageWidth || image.getHeight() != imageHeight) {
+            image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        Graphics2D g = image.createGraphics();
+        try {
+            Composite defaultComposite = g.getComposite();
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, imageWidth, imageHeight);
+            g.setComposite(defaultComposite);
+
+            g.scale(scene.scaleX, scene.scaleY);
+            if (quality.antialiased) {
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+            } else {
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+                g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED);
+            }
+            g.setStroke(quality.thinStroke ? THIN_STROKE : scene.dataStroke);
+            if (scene.persistence > 0) {
+                paintPersistence(g, scene);
+            } else if (scene.isXY()) {
+                paintDataXY(g, scene);
+            } else {
+                paintMultiChannelData(g, scene);
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private int[][] decode(Scene scene, byte[] data) {
+        int channelCount = scene.getChannelCount();
+        int valueCount = scene.frameFormat.getSampleCount(data) / channelCount;
+        if (channels.length != channelCount || channels[0].length != valueCount) {
+            channels = new int[channelCount][valueCount];
+        }
+        long startTime = Metrics.Histogram.start();
+        scene.frameFormat.readChannels(data, channels);
+        Metrics.DECODE_TIME.recordSince(startTime);
+        return channels;
+    }
+
+    private void paintMultiChannelData(Graphics2D g, Scene scene) {
+        int[][] channels = decode(scene, data);
+        for (int channel = 0; channel < channels.length; ++channel) {
+            g.setColor(DATA_COLORS[channel % DATA_COLORS.length]);
+            int[] values = channels[channel];
+            if (values.length > scene.graphArea.width) {
+                paintEnvelope(g, scene, values, channels.length);
+            } else {
+                computeTrace(scene, values, channels.length);
+                drawTrace(g, values.length);
+            }
+        }
+    }
+
+    private void computeTrace(Scene scene, int[] values, int channelCount) {
+        ensureTraceCapacity(values.length);
+        int u = scene.uMax;
+        for (int i = 0; i < values.length; ++i) {
+            int v = values[i];
+            assert v >= 0 && v <= scene.frameFormat.sampleMaxValue;
+            xPoints[i] = scene.toX(u);
+            yPoints[i] = scene.toY(v);
+            u -= channelCount;
+        }
+    }
+
+    /*
+     * With more samples than pixel columns, drawing a segment per sample is
+     * both slow and misleading (narrow glitches could be hidden by the
+     * antialiasing). We draw instead a vertical span per column, from the
+     * minimum to the maximum of its samples (including the last sample of the
+     * previous column to keep the trace continuous).
+     */
+    private void paintEnvelope(Graphics2D g, Scene scene, int[] values, int channelCount) {
+        int columnX = scene.toX(scene.uMax);
+        int lastY = scene.toY(values[0]);
+        int minY = lastY;
+        int maxY = lastY;
+        int u = scene.uMax;
+        for (int i = 0; i < values.length; ++i) {
+            int x = scene.toX(u);
+            int y = scene.toY(values[i]);
+            u -= channelCount;
+            if (x != columnX) {
+                g.drawLine(columnX, minY, columnX, maxY);
+                columnX = x;
+                minY = Math.min(lastY, y);
+                maxY = Math.max(lastY, y);
+            } else {
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+            lastY = y;
+        }
+        g.drawLine(columnX, minY, columnX, maxY);
+    }
+
+    private void paintDataXY(Graphics2D g, Scene scene) {
+        g.setColor(XY_DATA_COLOR);
+        int[][] channels = decode(scene, data);
+        computeTraceXY(scene, channels[0], channels[1]);
+        drawTrace(g, channels[0].length);
+    }
+
+    private void computeTraceXY(Scene scene, int[] xValues, int[] yValues) {
+        ensureTraceCapacity(xValues.length);
+        for (int i = 0; i < xValues.length; ++i) {
+            xPoints[i] = scene.toX(scene.uMax - xValues[i]);
+            yPoints[i] = scene.toY(yValues[i]);
+        }
+    }
+
+    /*
+     * Not a Graphics2D.drawPolyline, which strokes the whole path at once
+     * through the generic stroker. Individual lines are drawn as
+     * parallelograms, a path 2 to 4 times faster once antialiased, whatever
+     * the stroke width.
+     */
+    private void drawTrace(Graphics2D g, int pointCount) {
+        for (int i = 1; i < pointCount; ++i) {
+            g.drawLine(xPoints[i - 1], yPoints[i - 1], xPoints[i], yPoints[i]);
+        }
+    }
+
+    private void ensureTraceCapacity(int pointCount) {
+        if (xPoints.length < pointCount) {
+            xPoints = new int[pointCount];
+            yPoints = new int[pointCount];
+        }
+    }
+
+    /*
+     * The rasters are only colour mapped here, once per rendering, whereas
+     * all the frames are accumulated.
+     */
+    private void paintPersistence(Graphics2D g, Scene scene) {
+        for (int i = 0; i < persistenceRasters.length; ++i) {
+            int[] palette = scene.isXY() ? XY_DATA_PALETTE : DATA_PALETTES[i % DATA_PALETTES.length];
+            g.drawImage(persistenceRasters[i].render(palette), scene.graphArea.x, scene.graphArea.y, null);
+        }
+    }
+
+    private static PersistenceRaster[] createPersistenceRasters(Scene scene) {
+        int count = scene.isXY() ? 1 : scene.getChannelCount();
+        PersistenceRaster[] rasters = new PersistenceRaster[count];
+        for (int i = 0; i < count; ++i) {
+            rasters[i] = new PersistenceRaster(scene.graphArea.width + 1, scene.graphArea.height + 1);
+        }
+        return rasters;
+    }
+
+    private void accumulate(Scene scene, byte[] data) {
+        int[][] channels = decode(scene, data);
+        for (PersistenceRaster raster : persistenceRasters) {
+            raster.decay(scene.persistence);
+        }
+        if (scene.isXY()) {
+            computeTraceXY(scene, channels[0], channels[1]);
+            accumulateTrace(scene, persistenceRasters[0], channels[0].length);
+        } else {
+            for (int channel = 0; channel < channels.length; ++channel) {
+                computeTrace(scene, channels[channel], channels.length);
+                accumulateTrace(scene, persistenceRasters[channel], channels[channel].length);
+            }
+        }
+    }
+
+    private void accumulateTrace(Scene scene, PersistenceRaster raster, int pointCount) {
+        Rectangle graphArea = scene.graphArea;
+        for (int i = 1; i < pointCount; ++i) {
+            raster.addLine(
+                    xPoints[i - 1] - graphArea.x, yPoints[i - 1] - graphArea.y,
+                    xPoints[i] - graphArea.x, yPoints[i] - graphArea.y,
+                    i > 1);
+        }
+    }
+}
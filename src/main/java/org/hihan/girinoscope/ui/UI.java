@@ -21,19 +21,18 @@ import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.logging.ConsoleHandler;
@@ -59,14 +58,16 @@ import javax.swing.JPanel;
 import javax.swing.JToggleButton;
 import javax.swing.JToolBar;
 import javax.swing.SwingUtilities;
-import javax.swing.SwingWorker;
 import javax.swing.UIManager;
 import javax.swing.UIManager.LookAndFeelInfo;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.WindowConstants;
 import javax.swing.border.EmptyBorder;
+import org.hihan.girinoscope.comm.AcquisitionEngine;
+import org.hihan.girinoscope.comm.AcquisitionGroup;
+import org.hihan.girinoscope.comm.AcquisitionSession;
 import org.hihan.girinoscope.comm.Device;
-import org.hihan.girinoscope.comm.Girino;
+import org.hihan.girinoscope.comm.Frame;
 import org.hihan.girinoscope.comm.Girino.ChannelCompositionMode;
 import org.hihan.girinoscope.comm.Girino.ExtTriggerEventMode;
 import org.hihan.girinoscope.comm.Girino.Parameter;
@@ -75,6 +76,7 @@ import org.hihan.girinoscope.comm.Girino.TriggerEventMode;
 import org.hihan.girinoscope.comm.Girino.VoltageReference;
 import org.hihan.girinoscope.comm.Serial;
 import org.hihan.girinoscope.utils.Checksum;
+import org.hihan.girinoscope.utils.Metrics;
 import org.hihan.girinoscope.utils.OS;
 import org.hihan.girinoscope.utils.Settings;
 
@@ -105,6 +107,8 @@ public class UI extends JFrame {
         System.setProperty("awt.useSystemAAFontSettings", "on");
         System.setProperty("swing.aatext", "true");
 
+        Metrics.register();
+
         String lafClassName = new Settings().get("lookAndFeel", UIManager.getSystemLookAndFeelClassName());
         try {
             UIManager.setLookAndFeel(lafClassName);
@@ -112,21 +116,49 @@ public class UI extends JFrame {
             LOGGER.log(Level.WARNING, "When setting the look and feel at startup.", e);
         }
 
-        SwingUtilities.invokeAndWait(() -> {
-            JFrame frame = new UI();
-            frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
-            frame.pack();
-            frame.setLocationRelativeTo(null);
-            frame.setVisible(true);
-        });
+        SwingUtilities.invokeAndWait(() -> showWindow(new UI(), null));
     }
 
-    private final Settings settings = new Settings();
+    /*
+     * The windows opened in this JVM, each one acquiring from its own Girino
+     * (only accessed from the EDT).
+     */
+    private static final List<UI> WINDOWS = new ArrayList<>();
+
+    /*
+     * The acquisition in loop from several windows at once, their frames being
+     * aligned on their timestamps to be displayed together (only accessed from
+     * the EDT). Null when not acquiring this way.
+     */
+    private static AcquisitionGroup alignedAcquisition;
+
+    private static List<UI> alignedWindows = Collections.emptyList();
+
+    private static DisplayScheduler<Frame[]> alignedDisplayScheduler;
+
+    /*
+     * Milliseconds between the timestamps of frames displayed together.
+     */
+    private static final long ALIGNMENT_TOLERANCE = 50;
 
     /*
-     * The Girino protocol interface.
+     * The aligned frame sets waiting for the next refresh, like the frames of a
+     * session.
      */
-    private final Girino girino = new Girino();
+    private static final int ALIGNED_QUEUE_CAPACITY = 16;
+
+    private static void showWindow(JFrame frame, JFrame previousFrame) {
+        frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        frame.pack();
+        if (previousFrame != null) {
+            frame.setLocation(previousFrame.getX() + 32, previousFrame.getY() + 32);
+        } else {
+            frame.setLocationRelativeTo(null);
+        }
+        frame.setVisible(true);
+    }
+
+    private final Settings settings = new Settings();
 
     private final DeviceModel deviceModel = new DeviceModel();
 
@@ -140,144 +172,195 @@ public class UI extends JFrame {
 
     private final StatusBar statusBar;
 
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
-
-    private DataAcquisitionTask currentDataAcquisitionTask;
+    /*
+     * All the communication with the Girino interface is done by the session
+     * in its own thread, the UI only configuring it and displaying its frames.
+     */
+    private final AcquisitionSession session = new AcquisitionSession(new AcquisitionEngine.Listener() {
 
-    private static class ByteArray {
+        @Override
+        public void connecting(AcquisitionEngine.Configuration configuration) {
+            setStatus("blue", "Contacting Girino on %s...", configuration.getEndpointName());
+        }
 
-        public final byte[] bytes;
+        @Override
+        public void acquiring(AcquisitionEngine.Configuration configuration) {
+            setStatus("blue", "Acquiring data from %s...", configuration.getEndpointName());
+        }
 
-        public ByteArray(byte[] bytes) {
-            this.bytes = bytes;
+        @Override
+        public void terminated(AcquisitionEngine.Configuration configuration, Exception error) {
+            SwingUtilities.invokeLater(() -> acquisitionTerminated(configuration, error));
         }
-    }
+    });
 
     /*
-     * All the communication with the Girino interface is done asynchronously
-     * through this class (save the disposal).
+     * The frame currently displayed by the graph pane (only accessed from the
+     * EDT). It is released once replaced by a new one.
      */
-    private class DataAcquisitionTask extends SwingWorker<Void, ByteArray> {
+    private Frame displayedFrame;
 
-        private DeviceModel frozenDeviceModel;
+    private static final int DEFAULT_REFRESH_RATE = 60;
 
-        private final boolean repeated;
+    private int refreshRate = DEFAULT_REFRESH_RATE;
 
-        private int frameIndex;
-
-        public DataAcquisitionTask(boolean repeated) {
-            this.repeated = repeated;
-            startAcquiringAction.setEnabled(false);
-            startAcquiringInLoopAction.setEnabled(false);
-            stopAcquiringAction.setEnabled(true);
-            exportLastFrameAction.setEnabled(false);
+    /*
+     * The acquired frames are taken from the session to be displayed at most at
+     * the refresh rate, the skipped ones being only accumulated (if the
+     * persistence is enabled).
+     */
+    private final DisplayScheduler<Frame> displayScheduler = new DisplayScheduler<>(
+            DEFAULT_REFRESH_RATE,
+            session::poll,
+            this::displayFrame,
+            frame -> graphPane.accumulate(frame.getData()),
+            Frame::release);
+
+    private void configureEngine() {
+        synchronized (UI.this) {
+            if (deviceModel.getDevice() != null) {
+                session.configure(deviceModel.getDevice(), deviceModel.getPort(), deviceModel.toParameters());
+            }
         }
+    }
 
-        @Override
-        protected Void doInBackground() throws Exception {
-            do {
-                updateConnection();
-                acquireData();
-            } while (repeated && !isCancelled());
-            return null;
+    private void startAcquiring(boolean repeated) {
+        prepareAcquisition();
+        displayScheduler.start();
+        session.start(repeated);
+    }
+
+    private void prepareAcquisition() {
+        startAcquiringAction.setEnabled(false);
+        startAcquiringInLoopAction.setEnabled(false);
+        stopAcquiringAction.setEnabled(true);
+        exportLastFrameAction.setEnabled(false);
+        configureEngine();
+    }
+
+    /*
+     * Acquire in loop from all the windows ready to, each one displaying its
+     * frame of each aligned set at the same time. Like for a single window,
+     * the sets are displayed at the refresh rate (the one of this window), the
+     * skipped ones being only accumulated.
+     */
+    private void startAlignedAcquisition() {
+        List<UI> windows = new ArrayList<>();
+        for (UI window : WINDOWS) {
+            if (window.startAcquiringInLoopAction.isEnabled()) {
+                windows.add(window);
+            }
+        }
+        if (windows.isEmpty()) {
+            return;
         }
 
-        private void updateConnection() throws Exception {
-            boolean forceReconnection;
-            synchronized (UI.this) {
-                forceReconnection = frozenDeviceModel != null && frozenDeviceModel.getDevice() != deviceModel.getDevice();
-                frozenDeviceModel = new DeviceModel(deviceModel);
+        List<AcquisitionSession> sessions = new ArrayList<>();
+        for (UI window : windows) {
+            window.prepareAcquisition();
+            sessions.add(window.session);
+        }
+        BlockingQueue<Frame[]> alignedFrameSets = new ArrayBlockingQueue<>(ALIGNED_QUEUE_CAPACITY);
+        alignedWindows = windows;
+        alignedDisplayScheduler = new DisplayScheduler<>(
+                refreshRate,
+                alignedFrameSets::poll,
+                frames -> displayAlignedFrames(windows, frames),
+                frames -> accumulateAlignedFrames(windows, frames),
+                UI::releaseAll);
+        alignedAcquisition = new AcquisitionGroup(sessions, ALIGNMENT_TOLERANCE, TimeUnit.MILLISECONDS, frames -> {
+            if (!alignedFrameSets.offer(frames)) {
+                Metrics.COALESCED_FRAMES.increment();
+                releaseAll(frames);
             }
+        });
+        alignedDisplayScheduler.start();
+        try {
+            alignedAcquisition.start();
+        } catch (RuntimeException e) {
+            for (UI window : windows) {
+                if (!window.session.isCapturing()) {
+                    window.acquisitionTerminated(window.session.getConfiguration(), e);
+                }
+            }
+        }
+    }
 
-            setStatus("blue", "Contacting Girino on %s...", frozenDeviceModel.getPort().getSystemPortName());
+    private static void displayAlignedFrames(List<UI> windows, Frame[] frames) {
+        for (int i = 0; i < frames.length; ++i) {
+            if (WINDOWS.contains(windows.get(i))) {
+                windows.get(i).displayFrame(frames[i]);
+            } else {
+                frames[i].release();
+            }
+        }
+    }
 
-            Future<Void> connection = executor.submit(() -> {
-                if (forceReconnection) {
-                    girino.disconnect();
-                }
-                girino.connect(frozenDeviceModel.getDevice(), frozenDeviceModel.getPort(), frozenDeviceModel.toParameters());
-                return null;
-            });
-            try {
-                connection.get(15, TimeUnit.SECONDS);
-            } catch (TimeoutException e) {
-                connection.cancel(true);
-                throw new TimeoutException("No Girino detected on " + frozenDeviceModel.getPort().getSystemPortName());
-            } catch (InterruptedException e) {
-                connection.cancel(true);
-                throw e;
+    private static void accumulateAlignedFrames(List<UI> windows, Frame[] frames) {
+        for (int i = 0; i < frames.length; ++i) {
+            if (WINDOWS.contains(windows.get(i))) {
+                windows.get(i).graphPane.accumulate(frames[i].getData());
             }
         }
+    }
 
-        private void acquireData() throws Exception {
-            frameIndex = 1;
-            Future<byte[]> acquisition = null;
-            boolean terminated;
-            do {
-                setStatus("blue", "Acquiring data frame %d from %s...", frameIndex, frozenDeviceModel.getPort().getSystemPortName());
-                boolean updateConnection;
-                synchronized (UI.this) {
-                    // TODO Explain.
-                    deviceModel.setChannelCompositionMode(graphPane.getChannelCompositionMode());
-                    deviceModel.setThreshold(graphPane.getThreshold());
-                    deviceModel.setWaitDuration(graphPane.getWaitDuration());
+    private static void releaseAll(Frame[] frames) {
+        for (Frame frame : frames) {
+            frame.release();
+        }
+    }
 
-                    updateConnection = !frozenDeviceModel.equals(deviceModel);
-                }
-                if (updateConnection) {
-                    LOGGER.log(Level.FINE, "Update connection on {0}.", frozenDeviceModel.diff(deviceModel));
-                    if (acquisition != null) {
-                        acquisition.cancel(true);
-                    }
-                    terminated = true;
-                } else {
-                    if (acquisition == null) {
-                        acquisition = executor.submit(girino::acquireData);
-                    }
-                    try {
-                        byte[] buffer = acquisition.get(1, TimeUnit.SECONDS);
-                        if (buffer != null) {
-                            publish(new ByteArray(buffer));
-                            acquisition = null;
-                            terminated = !repeated;
-                        } else {
-                            terminated = true;
-                        }
-                        ++frameIndex;
-                    } catch (TimeoutException e) {
-                        // Just to wake up regularly.
-                        terminated = false;
-                    } catch (InterruptedException e) {
-                        acquisition.cancel(true);
-                        throw e;
-                    }
-                }
-            } while (!terminated);
+    private void stopAcquiring() {
+        if (alignedWindows.contains(this)) {
+            alignedAcquisition.cancel();
+        } else {
+            session.cancel();
         }
+    }
 
-        @Override
-        protected void process(List<ByteArray> byteArrays) {
-            LOGGER.log(Level.FINE, "{0} data buffer(s) to display.", byteArrays.size());
-            graphPane.setData(byteArrays.get(byteArrays.size() - 1).bytes);
-            exportLastFrameAction.setEnabled(true);
+    private void acquisitionTerminated(AcquisitionEngine.Configuration configuration, Exception error) {
+        if (alignedWindows.contains(this)) {
+            // The frames of the other windows could not be aligned anymore.
+            alignedAcquisition.cancel();
+            if (alignedWindows.stream().noneMatch(w -> w.session.isCapturing())) {
+                alignedDisplayScheduler.stop();
+                alignedDisplayScheduler = null;
+                alignedAcquisition = null;
+                alignedWindows = Collections.emptyList();
+            }
+        }
+        displayScheduler.stop();
+        LOGGER.log(Level.FINE, "{0} frame(s) coalesced.", displayScheduler.getCoalescedFrameCount());
+        startAcquiringAction.setEnabled(true);
+        startAcquiringInLoopAction.setEnabled(true);
+        stopAcquiringAction.setEnabled(false);
+        if (error == null) {
+            setStatus("blue", "Done acquiring data from %s.", configuration.getEndpointName());
+        } else {
+            LOGGER.log(Level.WARNING, "When acquiring data.", error);
+            setStatus("red", error);
         }
+    }
 
-        @Override
-        protected void done() {
-            startAcquiringAction.setEnabled(true);
-            startAcquiringInLoopAction.setEnabled(true);
-            stopAcquiringAction.setEnabled(false);
-            try {
-                if (!isCancelled()) {
-                    get();
-                }
-                setStatus("blue", "Done acquiring data from %s.", frozenDeviceModel.getPort().getSystemPortName());
-            } catch (ExecutionException e) {
-                LOGGER.log(Level.WARNING, "When acquiring data.", e);
-                setStatus("red", e);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+    private void displayFrame(Frame frame) {
+        graphPane.setData(frame.getData());
+        if (displayedFrame != null) {
+            displayedFrame.release();
+        }
+        displayedFrame = frame;
+        exportLastFrameAction.setEnabled(true);
+
+        if (session.isCapturing()) {
+            String remarks = "";
+            long badFrameCount = session.getBadFrameCount();
+            if (badFrameCount > 0) {
+                remarks += String.format(" (%d corrupted frame(s) dropped)", badFrameCount);
             }
+            if (graphPane.isRenderingQualityReduced()) {
+                remarks += " (reduced rendering quality)";
+            }
+            setStatus("blue", "Acquired data frame %d from %s%s...",
+                    session.getAcquiredFrameCount(), session.getConfiguration().getEndpointName(), remarks);
         }
     }
 
@@ -292,12 +375,9 @@ public class UI extends JFrame {
                 fileChooser.setSelectedFile(new File("frame-" + format.format(new Date()) + ".csv"));
                 if (fileChooser.showSaveDialog(UI.this) == JFileChooser.APPROVE_OPTION) {
                     File file = fileChooser.getSelectedFile();
-                    int[] value = graphPane.getValues();
+                    int[][] channels = graphPane.getChannels();
                     try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
-                        for (int i = 0; i < value.length; ++i) {
-                            writer.write(Integer.toString(value[i]));
-                            writer.newLine();
-                        }
+                        CsvExport.write(channels, writer);
                     } catch (IOException e) {
                         setStatus("red", e);
                     }
@@ -308,37 +388,19 @@ public class UI extends JFrame {
             "Stop acquiring",
             "Stop acquiring data from Girino.",
             Icon.get("media-playback-stop.png"),
-            event -> currentDataAcquisitionTask.cancel(true));
+            event -> stopAcquiring());
 
     private final Action startAcquiringAction = makeAction(
             "Start acquiring a single frame",
             "Start acquiring a single frame of data from Girino.",
             Icon.get("go-last.png"),
-            event -> {
-                synchronized (UI.this) {
-                    // TODO Explain.
-                    deviceModel.setChannelCompositionMode(graphPane.getChannelCompositionMode());
-                    deviceModel.setThreshold(graphPane.getThreshold());
-                    deviceModel.setWaitDuration(graphPane.getWaitDuration());
-                }
-                currentDataAcquisitionTask = new DataAcquisitionTask(false);
-                currentDataAcquisitionTask.execute();
-            });
+            event -> startAcquiring(false));
 
     private final Action startAcquiringInLoopAction = makeAction(
             "Start acquiring in loop",
             "Start acquiring data in loop from Girino.",
             Icon.get("go-next.png"),
-            event -> {
-                synchronized (UI.this) {
-                    // TODO Explain.
-                    deviceModel.setChannelCompositionMode(graphPane.getChannelCompositionMode());
-                    deviceModel.setThreshold(graphPane.getThreshold());
-                    deviceModel.setWaitDuration(graphPane.getWaitDuration());
-                }
-                currentDataAcquisitionTask = new DataAcquisitionTask(true);
-                currentDataAcquisitionTask.execute();
-            });
+            event -> startAcquiring(true));
 
     private final Action setDisplayedSignalReferential = makeAction(
             "Change signal interpretation",
@@ -355,12 +417,25 @@ public class UI extends JFrame {
             "About Girinoscope",
             event -> new AboutDialog(UI.this).setVisible(true));
 
+    private final Action newWindowAction = makeAction(
+            "New window",
+            "Open another window to acquire from another Girino at the same time.",
+            null,
+            event -> showWindow(new UI(), UI.this));
+
+    private final Action startAlignedAcquisitionAction = makeAction(
+            "Acquire in all windows",
+            "Start acquiring in loop in all the windows at once, their frames being displayed together.",
+            null,
+            event -> startAlignedAcquisition());
+
     private final Action exitAction = makeAction(
             "Quit",
-            event -> dispose());
+            event -> new ArrayList<>(WINDOWS).forEach(UI::dispose));
 
     public UI() {
         super.setTitle("Girinoscope");
+        WINDOWS.add(this);
 
         List<Image> icons = new LinkedList<>();
         for (int i = 256; i >= 16; i /= 2) {
@@ -373,6 +448,16 @@ public class UI extends JFrame {
         graphPane = new GraphPane();
         graphPane.setYCoordinateSystem(yAxisBuilder.build());
         graphPane.setPreferredSize(new Dimension(1024, 600));
+        graphPane.addPropertyChangeListener(GraphPane.THRESHOLD_PROPERTY_NAME, event -> {
+            synchronized (UI.this) {
+                deviceModel.setThreshold(graphPane.getThreshold());
+            }
+        });
+        graphPane.addPropertyChangeListener(GraphPane.WAIT_DURATION_PROPERTY_NAME, event -> {
+            synchronized (UI.this) {
+                deviceModel.setWaitDuration(graphPane.getWaitDuration());
+            }
+        });
         deviceModel.addPropertyChangeListener(DeviceModel.DEVICE_PROPERTY_NAME, event -> {
             graphPane.setFrameFormat(deviceModel.getDevice().getFrameFormat());
             graphPane.setChannelCompositionMode(deviceModel.getChannelCompositionMode());
@@ -394,6 +479,8 @@ public class UI extends JFrame {
         stopAcquiringAction.setEnabled(false);
         exportLastFrameAction.setEnabled(false);
 
+        deviceModel.addPropertyChangeListener(event -> configureEngine());
+
         setLastDevice();
         enumeratePorts();
 
@@ -412,25 +499,13 @@ public class UI extends JFrame {
     }
 
     /*
-     * It’s convenient, but not semantically correct, to shutdown the executor
-     * and disconnect Girino here.
+     * It’s convenient, but not semantically correct, to close the session (and
+     * disconnect Girino) here.
      */
     @Override
     public void dispose() {
-        try {
-            if (currentDataAcquisitionTask != null) {
-                currentDataAcquisitionTask.cancel(true);
-            }
-            executor.shutdownNow();
-            try {
-                executor.awaitTermination(2, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                LOGGER.log(Level.WARNING, "Serial line not responding.", e);
-            }
-            girino.disconnect();
-        } catch (IOException e) {
-            LOGGER.log(Level.WARNING, "When disconnecting from Girino.", e);
-        }
+        WINDOWS.remove(this);
+        session.close();
         super.dispose();
     }
 
@@ -470,10 +545,19 @@ public class UI extends JFrame {
     private List<SerialPort> enumeratePorts() {
         synchronized (UI.this) {
             List<SerialPort> ports = Serial.enumeratePorts();
-            SerialPort newPort = ports.stream()
-                    .filter(p -> deviceModel.getPort() == null || samePorts(p, deviceModel.getPort()))
-                    .findFirst()
-                    .orElse(null);
+            SerialPort newPort;
+            if (deviceModel.getPort() == null) {
+                // Prefer a port not already used by another window.
+                newPort = ports.stream()
+                        .filter(p -> WINDOWS.stream().noneMatch(w -> w != this && samePorts(p, w.deviceModel.getPort())))
+                        .findFirst()
+                        .orElse(ports.isEmpty() ? null : ports.get(0));
+            } else {
+                newPort = ports.stream()
+                        .filter(p -> samePorts(p, deviceModel.getPort()))
+                        .findFirst()
+                        .orElse(null);
+            }
 
             if (!samePorts(newPort, deviceModel.getPort())) {
                 deviceModel.setPort(newPort);
@@ -496,6 +580,8 @@ public class UI extends JFrame {
         JMenuBar menuBar = new JMenuBar();
 
         JMenu fileMenu = new JMenu("File");
+        fileMenu.add(newWindowAction);
+        fileMenu.add(startAlignedAcquisitionAction);
         fileMenu.add(exitAction);
         menuBar.add(fileMenu);
 
@@ -506,6 +592,8 @@ public class UI extends JFrame {
         JMenu displayMenu = new JMenu("Display");
         displayMenu.add(setDisplayedSignalReferential);
         displayMenu.add(createDataStrokeWidthMenu());
+        displayMenu.add(createPersistenceMenu());
+        displayMenu.add(createRefreshRateMenu());
         displayMenu.add(createThemeMenu());
         menuBar.add(displayMenu);
 
@@ -700,6 +788,48 @@ public class UI extends JFrame {
         return menu;
     }
 
+    private JMenu createPersistenceMenu() {
+        JMenu menu = new JMenu("Persistence");
+        ButtonGroup group = new ButtonGroup();
+        String[] names = {"None", "Short", "Medium", "Long", "Infinite"};
+        double[] retentions = {0, 0.8, 0.95, 0.99, 1};
+        for (int i = 0; i < names.length; ++i) {
+            final double retention = retentions[i];
+            Action setPersistence = makeAction(names[i], event -> graphPane.setPersistence(retention));
+            AbstractButton button = new JCheckBoxMenuItem(setPersistence);
+            if (retention == 0) {
+                button.setSelected(true);
+            }
+            group.add(button);
+            menu.add(button);
+        }
+        menu.addSeparator();
+        menu.add(makeAction("Clear", event -> graphPane.clearPersistence()));
+        return menu;
+    }
+
+    private JMenu createRefreshRateMenu() {
+        JMenu menu = new JMenu("Refresh rate");
+        ButtonGroup group = new ButtonGroup();
+        for (final int refreshRate : new int[]{15, 30, 60}) {
+            Action setRefreshRate = makeAction(refreshRate + " Hz", event -> {
+                UI.this.refreshRate = refreshRate;
+                displayScheduler.setRefreshRate(refreshRate);
+                if (alignedWindows.contains(UI.this)) {
+                    alignedDisplayScheduler.setRefreshRate(refreshRate);
+                }
+                graphPane.setRefreshRate(refreshRate);
+            });
+            AbstractButton button = new JCheckBoxMenuItem(setRefreshRate);
+            if (refreshRate == DEFAULT_REFRESH_RATE) {
+                button.doClick();
+            }
+            group.add(button);
+            menu.add(button);
+        }
+        return menu;
+    }
+
     private JMenu createThemeMenu() {
         String selectedLafClassName = settings.get("lookAndFeel", UIManager.getSystemLookAndFeelClassName());
         JMenu menu = new JMenu("Theme");
@@ -20,6 +20,30 @@ public class Checksum {
         }
     }
 
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < CRC16_TABLE.length; ++i) {
+            int crc = i << 8;
+            for (int j = 0; j < 8; ++j) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC16_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    /**
+     * CRC-16/CCITT-FALSE (polynomial 0x1021, initial value 0xFFFF), as
+     * computed by _crc_xmodem_update() from avr-libc when starting from 0xFFFF.
+     */
+    public static int crc16(byte[] data, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; ++i) {
+            crc = ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
     /**
      * @see
      * https://stackoverflow.com/questions/9655181/how-to-convert-a-byte-array-to-a-hex-string-in-java
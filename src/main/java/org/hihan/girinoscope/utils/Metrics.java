@@ -0,0 +1,358 @@
+package org.hihan.girinoscope.utils;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Application wide metrics fed by the acquisition chain, from the serial link
+ * to the display. They are cheap enough to be always updated and could be
+ * watched with any JMX console once {@link #register} has been called.
+ * <p>
+ * These metrics are global to the JVM: when acquiring from several devices at
+ * once (several windows or sessions), they sum up all of them. The figures
+ * of a single acquisition are given by its session (see
+ * {@code AcquisitionSession#getAcquiredFrameCount} for instance).
+ */
+public final class Metrics {
+
+    private static final Logger LOGGER = Logger.getLogger(Metrics.class.getName());
+
+    public static final String OBJECT_NAME = "org.hihan.girinoscope:type=Metrics";
+
+    /**
+     * Bytes received from the device (whatever they are).
+     */
+    public static final Meter RECEIVED_BYTES = new Meter();
+
+    /**
+     * Valid frames received from the device.
+     */
+    public static final Meter ACQUIRED_FRAMES = new Meter();
+
+    /**
+     * Corrupted frames received from the device and dropped.
+     */
+    public static final Counter DROPPED_FRAMES = new Counter();
+
+    /**
+     * Frames acquired but never displayed, a more recent one being available.
+     */
+    public static final Counter COALESCED_FRAMES = new Counter();
+
+    public static final Counter CONNECTIONS = new Counter();
+
+    /**
+     * Parameter changes applied while acquiring, without reconnecting.
+     */
+    public static final Counter PARAMETER_UPDATES = new Counter();
+
+    /**
+     * Traces rendered in a reduced quality to keep up with the frame rate.
+     */
+    public static final Counter REDUCED_QUALITY_RENDERINGS = new Counter();
+
+    /**
+     * Time spent waiting for a frame to start, only measured when the frames
+     * come with a sync header.
+     */
+    public static final Histogram TRIGGER_WAIT_TIME = new Histogram();
+
+    /**
+     * Time spent acquiring a whole frame, trigger wait included.
+     */
+    public static final Histogram ACQUISITION_TIME = new Histogram();
+
+    public static final Histogram DECODE_TIME = new Histogram();
+
+    /**
+     * Time spent painting the graph on the EDT, the traces being rendered
+     * beforehand.
+     */
+    public static final Histogram PAINT_TIME = new Histogram();
+
+    /**
+     * Time spent rendering the traces, off the EDT.
+     */
+    public static final Histogram RENDER_TIME = new Histogram();
+
+    public static class Counter {
+
+        private final LongAdder total = new LongAdder();
+
+        public void increment() {
+            total.increment();
+        }
+
+        public void add(long count) {
+            total.add(count);
+        }
+
+        public long get() {
+            return total.sum();
+        }
+
+        void reset() {
+            total.reset();
+        }
+    }
+
+    /**
+     * A counter also providing its rate, averaged over the time elapsed since
+     * the rate has been previously evaluated (a second at least).
+     */
+    public static class Meter extends Counter {
+
+        private static final long MIN_RATE_PERIOD = TimeUnit.SECONDS.toNanos(1);
+
+        private long periodStartTime = System.nanoTime();
+
+        private long periodStartTotal;
+
+        private double rate;
+
+        public synchronized double getRate() {
+            long now = System.nanoTime();
+            long elapsed = now - periodStartTime;
+            if (elapsed >= MIN_RATE_PERIOD) {
+                long total = get();
+                rate = (total - periodStartTotal) * 1e9 / elapsed;
+                periodStartTime = now;
+                periodStartTotal = total;
+            }
+            return rate;
+        }
+
+        @Override
+        synchronized void reset() {
+            super.reset();
+            periodStartTime = System.nanoTime();
+            periodStartTotal = 0;
+            rate = 0;
+        }
+    }
+
+    /**
+     * A latency histogram with power of 2 buckets in microseconds, the
+     * bucket i counting the durations in [2^(i-1), 2^i[ µs. Percentiles are
+     * therefore approximated by the upper bound of their bucket.
+     */
+    public static class Histogram {
+
+        private static final int BUCKET_COUNT = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+        private final LongAdder sum = new LongAdder();
+
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /**
+         * @return A start time for {@link #recordSince}.
+         */
+        public static long start() {
+            return System.nanoTime();
+        }
+
+        public void recordSince(long startTime) {
+            record(System.nanoTime() - startTime);
+        }
+
+        public void record(long durationInNanos) {
+            long micros = Math.max(0, durationInNanos) / 1000;
+            int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(bucket);
+            sum.add(durationInNanos);
+            max.accumulate(durationInNanos);
+        }
+
+        public LatencySnapshot snapshot() {
+            long[] counts = new long[BUCKET_COUNT];
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; ++i) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            double mean = total > 0 ? sum.sum() / 1e6 / total : 0;
+            return new LatencySnapshot(total, mean, max.get() / 1e6,
+                    getPercentile(counts, total, 0.5),
+                    getPercentile(counts, total, 0.99));
+        }
+
+        private static double getPercentile(long[] counts, long total, double percentile) {
+            long rank = (long) Math.ceil(total * percentile);
+            long cumulatedCount = 0;
+            for (int i = 0; i < counts.length; ++i) {
+                cumulatedCount += counts[i];
+                if (cumulatedCount >= rank && cumulatedCount > 0) {
+                    return (1L << i) / 1e3;
+                }
+            }
+            return 0;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKET_COUNT; ++i) {
+                buckets.set(i, 0);
+            }
+            sum.reset();
+            max.reset();
+        }
+    }
+
+    /**
+     * An immutable view of a {@link Histogram}, with durations in
+     * milliseconds.
+     */
+    public static class LatencySnapshot {
+
+        private final long count;
+
+        private final double mean;
+
+        private final double max;
+
+        private final double median;
+
+        private final double percentile99;
+
+        @ConstructorProperties({"count", "mean", "max", "median", "percentile99"})
+        public LatencySnapshot(long count, double mean, double max, double median, double percentile99) {
+            this.count = count;
+            this.mean = mean;
+            this.max = max;
+            this.median = median;
+            this.percentile99 = percentile99;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getMedian() {
+            return median;
+        }
+
+        public double getPercentile99() {
+            return percentile99;
+        }
+    }
+
+    private static class MBean implements MetricsMXBean {
+
+        @Override
+        public long getReceivedBytes() {
+            return RECEIVED_BYTES.get();
+        }
+
+        @Override
+        public double getReceivedBytesPerSecond() {
+            return RECEIVED_BYTES.getRate();
+        }
+
+        @Override
+        public long getAcquiredFrames() {
+            return ACQUIRED_FRAMES.get();
+        }
+
+        @Override
+        public double getAcquiredFramesPerSecond() {
+            return ACQUIRED_FRAMES.getRate();
+        }
+
+        @Override
+        public long getDroppedFrames() {
+            return DROPPED_FRAMES.get();
+        }
+
+        @Override
+        public long getCoalescedFrames() {
+            return COALESCED_FRAMES.get();
+        }
+
+        @Override
+        public long getConnections() {
+            return CONNECTIONS.get();
+        }
+
+        @Override
+        public long getParameterUpdates() {
+            return PARAMETER_UPDATES.get();
+        }
+
+        @Override
+        public long getReducedQualityRenderings() {
+            return REDUCED_QUALITY_RENDERINGS.get();
+        }
+
+        @Override
+        public LatencySnapshot getTriggerWaitTime() {
+            return TRIGGER_WAIT_TIME.snapshot();
+        }
+
+        @Override
+        public LatencySnapshot getAcquisitionTime() {
+            return ACQUISITION_TIME.snapshot();
+        }
+
+        @Override
+        public LatencySnapshot getDecodeTime() {
+            return DECODE_TIME.snapshot();
+        }
+
+        @Override
+        public LatencySnapshot getPaintTime() {
+            return PAINT_TIME.snapshot();
+        }
+
+        @Override
+        public LatencySnapshot getRenderTime() {
+            return RENDER_TIME.snapshot();
+        }
+
+        @Override
+        public void reset() {
+            for (Counter counter : new Counter[]{RECEIVED_BYTES, ACQUIRED_FRAMES, DROPPED_FRAMES, COALESCED_FRAMES, CONNECTIONS, PARAMETER_UPDATES, REDUCED_QUALITY_RENDERINGS}) {
+                counter.reset();
+            }
+            for (Histogram histogram : new Histogram[]{TRIGGER_WAIT_TIME, ACQUISITION_TIME, DECODE_TIME, PAINT_TIME, RENDER_TIME}) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * Publish the metrics on the platform MBean server. Failing to do so is
+     * not fatal, only logged.
+     */
+    public static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MBean(), name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Failed to register the metrics.", e);
+        }
+    }
+
+    private Metrics() {
+    }
+}
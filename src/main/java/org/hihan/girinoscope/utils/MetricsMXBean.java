@@ -0,0 +1,39 @@
+package org.hihan.girinoscope.utils;
+
+/**
+ * The management interface of the {@link Metrics}, registered under the
+ * {@value Metrics#OBJECT_NAME} name. Rates are in events (or bytes) per
+ * second, durations in milliseconds.
+ */
+public interface MetricsMXBean {
+
+    long getReceivedBytes();
+
+    double getReceivedBytesPerSecond();
+
+    long getAcquiredFrames();
+
+    double getAcquiredFramesPerSecond();
+
+    long getDroppedFrames();
+
+    long getCoalescedFrames();
+
+    long getConnections();
+
+    long getParameterUpdates();
+
+    long getReducedQualityRenderings();
+
+    Metrics.LatencySnapshot getTriggerWaitTime();
+
+    Metrics.LatencySnapshot getAcquisitionTime();
+
+    Metrics.LatencySnapshot getDecodeTime();
+
+    Metrics.LatencySnapshot getPaintTime();
+
+    Metrics.LatencySnapshot getRenderTime();
+
+    void reset();
+}
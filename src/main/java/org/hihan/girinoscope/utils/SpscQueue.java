@@ -0,0 +1,89 @@
+package org.hihan.girinoscope.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue for a single producer thread and a single consumer thread,
+ * without any lock. Neither side ever blocks: offering to a full queue or
+ * polling an empty one simply fails.
+ */
+public final class SpscQueue<T> {
+
+    private final Object[] elements;
+
+    private final int mask;
+
+    /*
+     * The index of the next element to poll, only written by the consumer.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /*
+     * The index of the next element to offer, only written by the producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity The maximum number of elements, rounded up to a power
+     * of two.
+     */
+    public SpscQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.elements = new Object[size];
+        this.mask = size - 1;
+    }
+
+    public int getCapacity() {
+        return elements.length;
+    }
+
+    /**
+     * To be called by the producer only.
+     *
+     * @return false if the queue is full, the element not being added.
+     */
+    public boolean offer(T element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long t = tail.get();
+        if (t - head.get() == elements.length) {
+            return false;
+        }
+        elements[(int) t & mask] = element;
+        // The element is published along with the new tail.
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * To be called by the consumer only.
+     *
+     * @return The oldest element, or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        int index = (int) h & mask;
+        T element = (T) elements[index];
+        elements[index] = null;
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    /**
+     * @return The number of elements, only a hint when called concurrently.
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+}
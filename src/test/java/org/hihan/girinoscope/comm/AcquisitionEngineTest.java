@@ -0,0 +1,224 @@
+package org.hihan.girinoscope.comm;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.hihan.girinoscope.utils.Metrics;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AcquisitionEngineTest {
+
+    private final BlockingQueue<AcquisitionEngine.Configuration> connections = new LinkedBlockingQueue<>();
+
+    private final BlockingQueue<AcquisitionEngine.Configuration> acquisitions = new LinkedBlockingQueue<>();
+
+    private final BlockingQueue<Exception> terminations = new LinkedBlockingQueue<>();
+
+    private final AcquisitionEngine engine = new AcquisitionEngine(new Girino(), new AcquisitionEngine.Listener() {
+
+        @Override
+        public void connecting(AcquisitionEngine.Configuration configuration) {
+            connections.add(configuration);
+        }
+
+        @Override
+        public void acquiring(AcquisitionEngine.Configuration configuration) {
+            acquisitions.add(configuration);
+        }
+
+        @Override
+        public void terminated(AcquisitionEngine.Configuration configuration, Exception error) {
+            terminations.add(error != null ? error : new Exception("none"));
+        }
+    });
+
+    @After
+    public void tearDown() throws Exception {
+        Assert.assertTrue(engine.close(2, TimeUnit.SECONDS));
+    }
+
+    private static Map<Girino.Parameter, Integer> getDefaultParameters(Device device) {
+        return device.getDefaultParameters(new EnumMap<>(Girino.Parameter.class));
+    }
+
+    private void awaitTermination() throws InterruptedException {
+        Exception error = terminations.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull("Not terminated", error);
+        Assert.assertEquals("none", error.getMessage());
+    }
+
+    @Test
+    public void testSingleAcquisition() throws Exception {
+        Device device = Device.createClassic();
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        simulatedGirino.setThrottled(false);
+
+        engine.configure(device, simulatedGirino, getDefaultParameters(device));
+        engine.start(false);
+        awaitTermination();
+        Assert.assertFalse(engine.isRunning());
+        Assert.assertEquals(1, engine.getAcquiredFrameCount());
+        Frame frame = engine.poll();
+        Assert.assertNotNull(frame);
+        Assert.assertEquals(device.getFrameFormat().getFrameSize(), frame.getData().length);
+        Assert.assertNull(engine.poll());
+    }
+
+    @Test(timeout = 10000)
+    public void testRepeatedAcquisition() throws Exception {
+        Device device = Device.createClassic();
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        simulatedGirino.setThrottled(false);
+
+        Map<Girino.Parameter, Integer> parameters = getDefaultParameters(device);
+        engine.configure(device, simulatedGirino, parameters);
+        engine.start(true);
+        while (engine.getAcquiredFrameCount() < 3) {
+            Frame frame = engine.poll();
+            if (frame != null) {
+                frame.release();
+            } else {
+                Thread.sleep(1);
+            }
+        }
+
+        long connectionCount = Metrics.CONNECTIONS.get();
+        parameters.put(Girino.Parameter.THRESHOLD, 100);
+        engine.configure(device, simulatedGirino, parameters);
+        long frameCount = engine.getAcquiredFrameCount();
+        while (engine.getAcquiredFrameCount() < frameCount + 3) {
+            Frame frame = engine.poll();
+            if (frame != null) {
+                frame.release();
+            } else {
+                Thread.sleep(1);
+            }
+        }
+        Assert.assertEquals(Integer.valueOf(100), simulatedGirino.getParameter(Girino.Parameter.THRESHOLD));
+        Assert.assertEquals(connectionCount, Metrics.CONNECTIONS.get());
+
+        engine.stop();
+        awaitTermination();
+        Assert.assertFalse(engine.isRunning());
+    }
+
+    @Test(timeout = 10000)
+    public void testParameterUpdateWhileWaitingForTrigger() throws Exception {
+        Device device = Device.createClassic();
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        simulatedGirino.setThrottled(false);
+        simulatedGirino.setTriggerDelay(1, TimeUnit.HOURS);
+
+        Map<Girino.Parameter, Integer> parameters = getDefaultParameters(device);
+        engine.configure(device, simulatedGirino, parameters);
+        engine.start(true);
+        Assert.assertNotNull(acquisitions.poll(5, TimeUnit.SECONDS));
+        parameters.put(Girino.Parameter.THRESHOLD, 100);
+        engine.configure(device, simulatedGirino, parameters);
+        while (!Integer.valueOf(100).equals(simulatedGirino.getParameter(Girino.Parameter.THRESHOLD))) {
+            Thread.sleep(10);
+        }
+
+        engine.stop();
+        awaitTermination();
+        Assert.assertEquals(0, engine.getAcquiredFrameCount());
+        Assert.assertTrue(acquisitions.isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void testCorruptedFramesAreNotQueued() throws Exception {
+        Device device = Device.createClassic().withFeatures(Device.Feature.FRAMING);
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        simulatedGirino.setThrottled(false);
+        engine.configure(device, simulatedGirino, getDefaultParameters(device));
+
+        simulatedGirino.corruptFrames(1);
+        engine.start(false);
+        awaitTermination();
+        Assert.assertEquals(1, engine.getBadFrameCount());
+        Assert.assertEquals(1, engine.getAcquiredFrameCount());
+        Frame frame = engine.poll();
+        Assert.assertNotNull(frame);
+        Assert.assertNull(engine.poll());
+
+        // A dropped frame given back to the pool would be reused here.
+        engine.start(false);
+        awaitTermination();
+        Frame nextFrame = engine.poll();
+        Assert.assertNotNull(nextFrame);
+        Assert.assertNotSame(frame, nextFrame);
+        Assert.assertEquals(2, engine.getAcquiredFrameCount());
+        frame.release();
+        nextFrame.release();
+    }
+
+    @Test(timeout = 10000)
+    public void testStopWhileConnecting() throws Exception {
+        Device device = Device.createClassic();
+        engine.configure(device, new SilentTransport(), getDefaultParameters(device));
+        engine.start(true);
+        Assert.assertNotNull(connections.poll(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        long stopTime = System.nanoTime();
+        engine.stop();
+        awaitTermination();
+        Assert.assertTrue(System.nanoTime() - stopTime < TimeUnit.SECONDS.toNanos(1));
+        Assert.assertTrue(acquisitions.isEmpty());
+    }
+
+    /*
+     * Something which is not a Girino, connected to the port.
+     */
+    private static class SilentTransport implements Transport {
+
+        @Override
+        public String readLine() throws InterruptedException {
+            return readLine(0);
+        }
+
+        @Override
+        public String readLine(long timeout) throws InterruptedException {
+            Thread.sleep(timeout > 0 ? timeout : Long.MAX_VALUE);
+            return null;
+        }
+
+        @Override
+        public int readBytes(byte[] buffer) throws InterruptedException {
+            readLine(0);
+            return 0;
+        }
+
+        @Override
+        public int read() throws InterruptedException {
+            readLine(0);
+            return -1;
+        }
+
+        @Override
+        public int discardInput() {
+            return 0;
+        }
+
+        @Override
+        public void writeLine(String line) {
+        }
+
+        @Override
+        public int getDataRate() {
+            return Serial.DEFAULT_DATA_RATE;
+        }
+
+        @Override
+        public void setDataRate(int dataRate) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
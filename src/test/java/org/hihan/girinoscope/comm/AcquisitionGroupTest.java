@@ -0,0 +1,113 @@
+package org.hihan.girinoscope.comm;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AcquisitionGroupTest {
+
+    private final List<AcquisitionSession> sessions = Arrays.asList(new AcquisitionSession(), new AcquisitionSession());
+
+    @After
+    public void tearDown() {
+        sessions.forEach(AcquisitionSession::close);
+    }
+
+    @Test(timeout = 10000)
+    public void testAlignedAcquisition() throws Exception {
+        Device[] devices = {Device.createClassic(), Device.createSoftGirino()};
+        for (int i = 0; i < devices.length; ++i) {
+            SimulatedGirino simulatedGirino = new SimulatedGirino(devices[i]);
+            simulatedGirino.setThrottled(false);
+            sessions.get(i).configure(devices[i], simulatedGirino, devices[i].getDefaultParameters(new EnumMap<>(Girino.Parameter.class)));
+        }
+
+        long tolerance = TimeUnit.SECONDS.toNanos(1);
+        BlockingQueue<Frame[]> alignedFrameSets = new LinkedBlockingQueue<>();
+        AcquisitionGroup group = new AcquisitionGroup(sessions, tolerance, TimeUnit.NANOSECONDS, alignedFrameSets::add);
+        group.start();
+        long previousTimestamp = 0;
+        for (int i = 0; i < 3; ++i) {
+            Frame[] frames = alignedFrameSets.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(frames);
+            Assert.assertEquals(devices.length, frames.length);
+            for (int j = 0; j < devices.length; ++j) {
+                Assert.assertEquals(devices[j].getFrameFormat().getFrameSize(), frames[j].getData().length);
+            }
+            Assert.assertTrue(Math.abs(frames[0].getTimestamp() - frames[1].getTimestamp()) <= tolerance);
+            Assert.assertTrue(i == 0 || frames[0].getTimestamp() - previousTimestamp > 0);
+            previousTimestamp = frames[0].getTimestamp();
+            for (Frame frame : frames) {
+                frame.release();
+            }
+        }
+        group.cancel();
+        Assert.assertTrue(group.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void testUnalignedFramesAreDropped() throws Exception {
+        // The sessions never deliver anything, the frames being given by hand.
+        Device device = Device.createClassic();
+        for (AcquisitionSession session : sessions) {
+            SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+            simulatedGirino.setThrottled(false);
+            simulatedGirino.setTriggerDelay(1, TimeUnit.HOURS);
+            session.configure(device, simulatedGirino, device.getDefaultParameters(new EnumMap<>(Girino.Parameter.class)));
+        }
+
+        FramePool framePool = new FramePool(1, 8);
+        BlockingQueue<Frame[]> alignedFrameSets = new LinkedBlockingQueue<>();
+        AcquisitionGroup group = new AcquisitionGroup(sessions, 10, TimeUnit.NANOSECONDS, alignedFrameSets::add);
+        group.start();
+
+        Frame first = createFrame(framePool, 100);
+        group.frameAcquired(0, first);
+        group.frameAcquired(1, createFrame(framePool, 130));
+        Assert.assertEquals(1, group.getUnalignedFrameCount());
+        // The dropped frame is back in the pool.
+        Assert.assertSame(first, framePool.acquire());
+
+        group.frameAcquired(0, createFrame(framePool, 135));
+        group.frameAcquired(1, createFrame(framePool, 200));
+        group.frameAcquired(1, createFrame(framePool, 300));
+        group.frameAcquired(0, createFrame(framePool, 305));
+        Assert.assertEquals(2, group.getUnalignedFrameCount());
+
+        assertTimestamps(alignedFrameSets.poll(), 135, 130);
+        assertTimestamps(alignedFrameSets.poll(), 305, 300);
+        Assert.assertNull(alignedFrameSets.poll());
+
+        // The frames waiting for their counterparts are released on cancel,
+        // and so are the ones coming afterward.
+        Frame pending = createFrame(framePool, 400);
+        group.frameAcquired(0, pending);
+        group.cancel();
+        Assert.assertSame(pending, framePool.acquire());
+        Frame late = createFrame(framePool, 410);
+        group.frameAcquired(1, late);
+        Assert.assertSame(late, framePool.acquire());
+        Assert.assertNull(alignedFrameSets.poll());
+        Assert.assertTrue(group.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static Frame createFrame(FramePool framePool, long timestamp) {
+        Frame frame = framePool.acquire();
+        frame.setTimestamp(timestamp);
+        return frame;
+    }
+
+    private static void assertTimestamps(Frame[] frames, long... timestamps) {
+        Assert.assertNotNull(frames);
+        Assert.assertEquals(timestamps.length, frames.length);
+        for (int i = 0; i < timestamps.length; ++i) {
+            Assert.assertEquals(timestamps[i], frames[i].getTimestamp());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.hihan.girinoscope.comm;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AcquisitionSessionTest {
+
+    private final AcquisitionSession session = new AcquisitionSession();
+
+    private final Device device = Device.createClassic();
+
+    private final SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+
+    @Before
+    public void setUp() {
+        simulatedGirino.setThrottled(false);
+        session.configure(device, simulatedGirino, device.getDefaultParameters(new EnumMap<>(Girino.Parameter.class)));
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testCapture() throws Exception {
+        for (int i = 0; i < 2; ++i) {
+            Frame frame = session.capture(5, TimeUnit.SECONDS);
+            Assert.assertEquals(device.getFrameFormat().getFrameSize(), frame.getData().length);
+            frame.release();
+            Assert.assertFalse(session.isCapturing());
+        }
+
+        Map<Girino.Parameter, Integer> parameters = new EnumMap<>(Girino.Parameter.class);
+        parameters.put(Girino.Parameter.THRESHOLD, 100);
+        session.setParameters(parameters);
+        session.capture(5, TimeUnit.SECONDS).release();
+        Assert.assertEquals(Integer.valueOf(100), simulatedGirino.getParameter(Girino.Parameter.THRESHOLD));
+    }
+
+    @Test(timeout = 10000)
+    public void testCaptureTimeout() throws Exception {
+        simulatedGirino.setTriggerDelay(1, TimeUnit.HOURS);
+        try {
+            session.capture(500, TimeUnit.MILLISECONDS);
+            Assert.fail("No timeout");
+        } catch (TimeoutException e) {
+            Assert.assertFalse(session.isCapturing());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testContinuousCapture() throws Exception {
+        session.start(true);
+        for (int i = 0; i < 3; ++i) {
+            Frame frame = session.take(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(frame);
+            frame.release();
+        }
+        session.cancel();
+        Assert.assertTrue(session.awaitTermination(5, TimeUnit.SECONDS));
+
+        BlockingQueue<Frame> frames = new LinkedBlockingQueue<>();
+        session.start(frames::add);
+        for (int i = 0; i < 3; ++i) {
+            Frame frame = frames.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(frame);
+            frame.release();
+        }
+        session.cancel();
+        Assert.assertTrue(session.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
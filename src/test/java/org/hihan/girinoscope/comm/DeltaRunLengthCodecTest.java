@@ -0,0 +1,65 @@
+package org.hihan.girinoscope.comm;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DeltaRunLengthCodecTest {
+
+    private static byte[] decode(FrameFormat frameFormat, byte[] encoded) {
+        DeltaRunLengthCodec codec = new DeltaRunLengthCodec(frameFormat);
+        codec.reset();
+        for (byte b : encoded) {
+            Assert.assertTrue(codec.decode(b & 0xFF));
+        }
+        Assert.assertTrue(codec.isComplete());
+        byte[] frame = new byte[frameFormat.getFrameSize()];
+        codec.getFrame(frame);
+        return frame;
+    }
+
+    @Test
+    public void testEncoding() {
+        FrameFormat frameFormat = new FrameFormat(8, 1, true, 255);
+        int[] values = {0, 0, 0, 10, 5, 200, 200, 136};
+        byte[] encoded = DeltaRunLengthCodec.encode(frameFormat, values);
+        Assert.assertArrayEquals(new byte[]{
+            (byte) 0x82, // 0 x 3
+            (byte) 10, // +10
+            (byte) 0x7B, // -5
+            (byte) 0xC0, (byte) 200, // literal
+            (byte) 0x80, // 200 x 1
+            (byte) 0x40 // -64
+        }, encoded);
+        Assert.assertArrayEquals(new byte[]{0, 0, 0, 10, 5, (byte) 200, (byte) 200, (byte) 136}, decode(frameFormat, encoded));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        FrameFormat frameFormat = FrameFormat.packed(1000, 12, 4095);
+        int[] values = new int[frameFormat.sampleCount];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = i < 300 ? 2048 : (int) (2047 + 2047 * Math.sin(i / 100.0));
+        }
+        byte[] encoded = DeltaRunLengthCodec.encode(frameFormat, values);
+        Assert.assertTrue(encoded.length < frameFormat.getFrameSize());
+        Assert.assertArrayEquals(values, frameFormat.readValues(decode(frameFormat, encoded)));
+    }
+
+    @Test
+    public void testCorruptedFrames() {
+        FrameFormat frameFormat = new FrameFormat(4, 1, true, 255);
+        DeltaRunLengthCodec codec = new DeltaRunLengthCodec(frameFormat);
+
+        // Reserved token.
+        codec.reset();
+        Assert.assertFalse(codec.decode(0xC1));
+
+        // Too many samples.
+        codec.reset();
+        Assert.assertFalse(codec.decode(0x84));
+
+        // Out of range sample.
+        codec.reset();
+        Assert.assertFalse(codec.decode(0x7F));
+    }
+}
@@ -41,4 +41,83 @@ public class FrameFormatTest {
                 (byte) 255, (byte) 255);
         Assert.assertArrayEquals(expected, values);
     }
+
+    @Test
+    public void testReadValuesIntoSuppliedArray() {
+        FrameFormat format = new FrameFormat(1000, 2, true, Short.MAX_VALUE);
+        int[] values = {-1, -1, -1};
+        format.readValues(new byte[]{(byte) 30, (byte) 0, (byte) 32, (byte) 78}, values);
+        Assert.assertArrayEquals(new int[]{30, 20000, -1}, values);
+    }
+
+    @Test
+    public void testReadValuesRoundTrip() {
+        int[] expected = {0, 1, 255, 256, 65535, 65536, 0x123456, 0x7FFFFFFF, -1};
+        for (int size = 1; size <= 4; ++size) {
+            for (boolean bigEndian : new boolean[]{true, false}) {
+                FrameFormat format = new FrameFormat(expected.length, size, bigEndian, 0);
+                int mask = size == 4 ? -1 : (1 << (size * 8)) - 1;
+                int[] masked = new int[expected.length];
+                for (int i = 0; i < expected.length; ++i) {
+                    masked[i] = expected[i] & mask;
+                }
+                byte[] data = new byte[expected.length * size];
+                format.writeValues(masked, data);
+                Assert.assertArrayEquals(masked, format.readValues(data));
+            }
+        }
+    }
+
+    @Test
+    public void testReadValuesIntoShorts() {
+        FrameFormat format = new FrameFormat(1000, 2, true, Short.MAX_VALUE);
+        short[] values = new short[2];
+        format.readValues(new byte[]{(byte) 32, (byte) 78, (byte) 255, (byte) 255}, values);
+        Assert.assertEquals(20000, values[0]);
+        Assert.assertEquals(65535, values[1] & 0xFFFF);
+    }
+
+    @Test
+    public void testReadChannels() {
+        FrameFormat format = new FrameFormat(1000, 2, false, Short.MAX_VALUE);
+        int[][] channels = format.readChannels(new byte[]{
+            (byte) 0, (byte) 1,
+            (byte) 0, (byte) 2,
+            (byte) 0, (byte) 3,
+            (byte) 0, (byte) 4,
+            (byte) 1, (byte) 0,
+            (byte) 2, (byte) 0}, Girino.ChannelCompositionMode.DUAL);
+        Assert.assertArrayEquals(new int[]{1, 3, 256}, channels[0]);
+        Assert.assertArrayEquals(new int[]{2, 4, 512}, channels[1]);
+    }
+
+    @Test
+    public void testReadPacked12BitValues() {
+        FrameFormat format = FrameFormat.packed(3, 12, 4095);
+        Assert.assertEquals(5, format.getFrameSize());
+        int[] values = format.readValues((byte) 0x23, (byte) 0x41, (byte) 0xFF, (byte) 0x56, (byte) 0x04);
+        Assert.assertArrayEquals(new int[]{0x123, 0xFF4, 0x456}, values);
+    }
+
+    @Test
+    public void testPackedRoundTrip() {
+        for (int bitCount : new int[]{10, 12}) {
+            FrameFormat format = FrameFormat.packed(7, bitCount, (1 << bitCount) - 1);
+            int[] expected = {0, 1, 1023, 512, 3, 1000, 7};
+            byte[] data = new byte[format.getFrameSize()];
+            format.writeValues(expected, data);
+            Assert.assertArrayEquals(expected, format.readValues(data));
+
+            int[][] channels = {new int[3], new int[3]};
+            format.readChannels(data, channels);
+            Assert.assertArrayEquals(new int[]{0, 1023, 3}, channels[0]);
+            Assert.assertArrayEquals(new int[]{1, 512, 1000}, channels[1]);
+
+            short[] shorts = new short[expected.length];
+            format.readValues(data, shorts);
+            for (int i = 0; i < expected.length; ++i) {
+                Assert.assertEquals(expected[i], shorts[i]);
+            }
+        }
+    }
 }
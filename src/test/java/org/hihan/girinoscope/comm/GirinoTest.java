@@ -0,0 +1,216 @@
+package org.hihan.girinoscope.comm;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GirinoTest {
+
+    private final Girino girino = new Girino();
+
+    @After
+    public void tearDown() throws Exception {
+        girino.disconnect();
+    }
+
+    private static Map<Girino.Parameter, Integer> getDefaultParameters(Device device) {
+        return device.getDefaultParameters(new EnumMap<>(Girino.Parameter.class));
+    }
+
+    @Test
+    public void testConnectAndAcquire() throws Exception {
+        Device device = Device.createClassic();
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        simulatedGirino.setThrottled(false);
+
+        Map<Girino.Parameter, Integer> parameters = getDefaultParameters(device);
+        parameters.put(Girino.Parameter.THRESHOLD, 100);
+        girino.connect(device, simulatedGirino, parameters);
+        Assert.assertEquals(Integer.valueOf(100), simulatedGirino.getParameter(Girino.Parameter.THRESHOLD));
+
+        FrameFormat frameFormat = device.getFrameFormat();
+        byte[] buffer = new byte[frameFormat.getFrameSize()];
+        Assert.assertTrue(girino.acquireData(buffer));
+        for (int value : frameFormat.readValues(buffer)) {
+            Assert.assertTrue(value >= 0 && value <= frameFormat.sampleMaxValue);
+        }
+    }
+
+    @Test
+    public void testPackedFrameFormat() throws Exception {
+        Device device = Device.createStm32f103mm().withFrameFormat(FrameFormat.packed(1280, 12, 4095));
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        simulatedGirino.setThrottled(false);
+        girino.connect(device, simulatedGirino, getDefaultParameters(device));
+
+        byte[] buffer = new byte[1280 * 3 / 2];
+        Assert.assertTrue(girino.acquireData(buffer));
+        for (int value : device.getFrameFormat().readValues(buffer)) {
+            Assert.assertTrue(value >= 0 && value <= 4095);
+        }
+    }
+
+    @Test
+    public void testPipelinedParameters() throws Exception {
+        Device device = Device.createClassic().withFeatures(Device.Feature.PIPELINED_COMMANDS);
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+
+        Map<Girino.Parameter, Integer> parameters = getDefaultParameters(device);
+        parameters.put(Girino.Parameter.PRESCALER, 64);
+        parameters.put(Girino.Parameter.THRESHOLD, 100);
+        girino.connect(device, simulatedGirino, parameters);
+        Assert.assertEquals(Integer.valueOf(64), simulatedGirino.getParameter(Girino.Parameter.PRESCALER));
+        Assert.assertEquals(Integer.valueOf(100), simulatedGirino.getParameter(Girino.Parameter.THRESHOLD));
+
+        parameters.put(Girino.Parameter.THRESHOLD, 1000);
+        parameters.put(Girino.Parameter.WAIT_DURATION, 600);
+        try {
+            girino.connect(device, simulatedGirino, parameters);
+            Assert.fail("The threshold should have been rejected");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("Threshold"));
+            Assert.assertFalse(e.getMessage().contains("Wait duration"));
+        }
+        Assert.assertEquals(Integer.valueOf(600), simulatedGirino.getParameter(Girino.Parameter.WAIT_DURATION));
+    }
+
+    @Test
+    public void testReconnectionAfterReset() throws Exception {
+        Device device = Device.createSoftGirino();
+        girino.connect(device, new SimulatedGirino(device), getDefaultParameters(device));
+        girino.disconnect();
+
+        // A new simulated device is a device which has just been reset.
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        girino.connect(device, simulatedGirino, getDefaultParameters(device));
+        Assert.assertEquals(0, simulatedGirino.getCommandCount('d'));
+    }
+
+    @Test
+    public void testReconnectionAfterResetToAnotherFirmware() throws Exception {
+        Device device = Device.createSoftGirino();
+        girino.connect(device, new SimulatedGirino(device), getDefaultParameters(device));
+        girino.disconnect();
+
+        Device otherDevice = device.withFeatures(Device.Feature.STREAMING);
+        SimulatedGirino simulatedGirino = new SimulatedGirino(otherDevice);
+        girino.connect(otherDevice, simulatedGirino, getDefaultParameters(otherDevice));
+        Assert.assertEquals(1, simulatedGirino.getCommandCount('d'));
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        Device device = Device.createClassic().withFeatures(Device.Feature.STREAMING);
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        simulatedGirino.setThrottled(false);
+        girino.connect(device, simulatedGirino, getDefaultParameters(device));
+
+        FrameFormat frameFormat = device.getFrameFormat();
+        byte[] buffer = new byte[frameFormat.getFrameSize()];
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertTrue(girino.acquireStreamedData(buffer));
+        }
+        girino.stopStreaming();
+        Assert.assertTrue(girino.acquireData(buffer));
+    }
+
+    @Test
+    public void testParameterUpdateWhileStreaming() throws Exception {
+        Device device = Device.createClassic().withFeatures(Device.Feature.STREAMING, Device.Feature.PIPELINED_COMMANDS);
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        simulatedGirino.setThrottled(false);
+        Map<Girino.Parameter, Integer> parameters = getDefaultParameters(device);
+        girino.connect(device, simulatedGirino, parameters);
+
+        byte[] buffer = new byte[device.getFrameFormat().getFrameSize()];
+        Assert.assertTrue(girino.acquireStreamedData(buffer));
+        int stopCount = simulatedGirino.getCommandCount('S');
+        girino.updateParameters(parameters);
+        Assert.assertEquals(stopCount, simulatedGirino.getCommandCount('S'));
+
+        parameters.put(Girino.Parameter.THRESHOLD, 100);
+        long startTime = System.nanoTime();
+        girino.updateParameters(parameters);
+        Assert.assertTrue(System.nanoTime() - startTime < TimeUnit.MILLISECONDS.toNanos(device.getChainedCommandDelay()));
+        Assert.assertEquals(stopCount + 1, simulatedGirino.getCommandCount('S'));
+        Assert.assertEquals(Integer.valueOf(100), simulatedGirino.getParameter(Girino.Parameter.THRESHOLD));
+        Assert.assertTrue(girino.acquireStreamedData(buffer));
+    }
+
+    @Test
+    public void testCorruptedFramesAreDropped() throws Exception {
+        Device device = Device.createClassic().withFeatures(Device.Feature.STREAMING, Device.Feature.FRAMING);
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        simulatedGirino.setThrottled(false);
+        girino.connect(device, simulatedGirino, getDefaultParameters(device));
+
+        FrameFormat frameFormat = device.getFrameFormat();
+        byte[] buffer = new byte[frameFormat.getFrameSize()];
+        simulatedGirino.corruptFrames(2);
+        Assert.assertFalse(girino.acquireStreamedData(buffer));
+        Assert.assertFalse(girino.acquireStreamedData(buffer));
+        Assert.assertTrue(girino.acquireStreamedData(buffer));
+        girino.stopStreaming();
+
+        simulatedGirino.corruptFrames(1);
+        Assert.assertFalse(girino.acquireData(buffer));
+        Assert.assertTrue(girino.acquireData(buffer));
+        Assert.assertEquals(3, girino.getBadFrameCount());
+    }
+
+    @Test
+    public void testCompressedFrames() throws Exception {
+        Device device = Device.createClassic().withFeatures(Device.Feature.STREAMING, Device.Feature.COMPRESSION);
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        simulatedGirino.setThrottled(false);
+        girino.connect(device, simulatedGirino, getDefaultParameters(device));
+
+        byte[] buffer = new byte[device.getFrameFormat().getFrameSize()];
+        Assert.assertTrue(girino.acquireData(buffer));
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertTrue(girino.acquireStreamedData(buffer));
+        }
+        girino.stopStreaming();
+
+        device = device.withFeatures(Device.Feature.FRAMING);
+        simulatedGirino = new SimulatedGirino(device);
+        simulatedGirino.setThrottled(false);
+        girino.connect(device, simulatedGirino, getDefaultParameters(device));
+        simulatedGirino.corruptFrames(1);
+        Assert.assertFalse(girino.acquireData(buffer));
+        Assert.assertTrue(girino.acquireData(buffer));
+    }
+
+    @Test
+    public void testBaudRateNegotiation() throws Exception {
+        Device device = Device.createStm32f103mm().withBaudRates(115200, 1_000_000, 500_000);
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        girino.connect(device, simulatedGirino, getDefaultParameters(device));
+        Assert.assertEquals(1_000_000, simulatedGirino.getDataRate());
+    }
+
+    @Test
+    public void testSingleBaudRate() throws Exception {
+        Device device = Device.createStm32f103mm().withBaudRates(115200, 1_000_000).withBaudRates(115200);
+        Assert.assertFalse(device.isWritable(Girino.Parameter.BAUD_RATE));
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        girino.connect(device, simulatedGirino, getDefaultParameters(device));
+        Assert.assertEquals(0, simulatedGirino.getCommandCount('b'));
+        Assert.assertEquals(115200, simulatedGirino.getDataRate());
+    }
+
+    @Test
+    public void testBaudRateFallback() throws Exception {
+        Device device = Device.createStm32f103mm().withBaudRates(115200, 1_000_000, 500_000);
+        SimulatedGirino simulatedGirino = new SimulatedGirino(device);
+        simulatedGirino.setMaxReliableDataRate(500_000);
+        girino.connect(device, simulatedGirino, getDefaultParameters(device));
+        Assert.assertEquals(500_000, simulatedGirino.getDataRate());
+        Assert.assertEquals(Integer.valueOf(500_000), simulatedGirino.getParameter(Girino.Parameter.BAUD_RATE));
+        Assert.assertNotNull(girino.acquireData());
+    }
+}
@@ -0,0 +1,77 @@
+package org.hihan.girinoscope.ui;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import javax.swing.SwingUtilities;
+import org.hihan.girinoscope.comm.Frame;
+import org.hihan.girinoscope.comm.FramePool;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DisplaySchedulerTest {
+
+    private final FramePool framePool = new FramePool(1, 8);
+
+    private final Deque<Frame> acquiredFrames = new ArrayDeque<>();
+
+    private final List<Integer> displayedFrames = new ArrayList<>();
+
+    private final List<Integer> coalescedFrames = new ArrayList<>();
+
+    private final DisplayScheduler<Frame> scheduler = new DisplayScheduler<>(
+            60,
+            acquiredFrames::pollFirst,
+            frame -> {
+                displayedFrames.add((int) frame.getData()[0]);
+                frame.release();
+            },
+            frame -> coalescedFrames.add((int) frame.getData()[0]),
+            Frame::release);
+
+    private void acquire(int... ids) {
+        for (int id : ids) {
+            Frame frame = framePool.acquire();
+            frame.getData()[0] = (byte) id;
+            acquiredFrames.addLast(frame);
+        }
+    }
+
+    /*
+     * Everything is done on the EDT, the timer being unable to refresh in
+     * between.
+     */
+    @Test
+    public void testCoalescing() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            acquire(0);
+            scheduler.start();
+            // The stale frame has been discarded.
+            Assert.assertTrue(acquiredFrames.isEmpty());
+
+            acquire(1, 2, 3, 4, 5);
+            scheduler.stop();
+            Assert.assertEquals(4, scheduler.getCoalescedFrameCount());
+            Assert.assertEquals(Arrays.asList(1, 2, 3, 4), coalescedFrames);
+            Assert.assertEquals(Collections.singletonList(5), displayedFrames);
+
+            scheduler.stop();
+            Assert.assertEquals(1, displayedFrames.size());
+
+            scheduler.start();
+            Assert.assertEquals(0, scheduler.getCoalescedFrameCount());
+            acquire(6);
+            scheduler.stop();
+            Assert.assertEquals(0, scheduler.getCoalescedFrameCount());
+            Assert.assertEquals(Arrays.asList(5, 6), displayedFrames);
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRefreshRate() {
+        scheduler.setRefreshRate(0);
+    }
+}
@@ -0,0 +1,107 @@
+package org.hihan.girinoscope.ui;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PersistenceRasterTest {
+
+    /*
+     * Each pixel of the rendered image holds its palette index.
+     */
+    private static final int[] IDENTITY_PALETTE = new int[256];
+
+    static {
+        for (int i = 0; i < IDENTITY_PALETTE.length; ++i) {
+            IDENTITY_PALETTE[i] = i;
+        }
+    }
+
+    private final PersistenceRaster raster = new PersistenceRaster(8, 4);
+
+    private int[][] render() {
+        BufferedImage image = raster.render(IDENTITY_PALETTE);
+        int[][] levels = new int[raster.height][raster.width];
+        for (int y = 0; y < raster.height; ++y) {
+            for (int x = 0; x < raster.width; ++x) {
+                levels[y][x] = image.getRGB(x, y);
+            }
+        }
+        return levels;
+    }
+
+    @Test
+    public void testAddLine() {
+        raster.addLine(0, 0, 3, 3, false);
+        // Continuing the previous segment, its first pixel is not hit twice.
+        raster.addLine(3, 3, 6, 3, true);
+        int[][] levels = render();
+        for (int i = 0; i <= 3; ++i) {
+            Assert.assertEquals(32, levels[i][i]);
+        }
+        for (int x = 4; x <= 6; ++x) {
+            Assert.assertEquals(32, levels[3][x]);
+        }
+        Assert.assertEquals(0, levels[0][1]);
+        Assert.assertEquals(0, levels[3][7]);
+
+        // Not continued, the first pixel is hit again.
+        raster.addLine(6, 3, 7, 3, false);
+        levels = render();
+        Assert.assertEquals(64, levels[3][6]);
+        Assert.assertEquals(32, levels[3][7]);
+    }
+
+    @Test
+    public void testOutOfBoundsHitsAreIgnored() {
+        raster.addLine(-2, -1, 9, -1, false);
+        raster.addLine(-2, 0, 1, 0, false);
+        int[][] levels = render();
+        Assert.assertEquals(32, levels[0][0]);
+        Assert.assertEquals(32, levels[0][1]);
+        Assert.assertEquals(0, levels[0][2]);
+    }
+
+    @Test
+    public void testDecay() {
+        raster.addLine(0, 0, 0, 0, false);
+        raster.decay(1);
+        Assert.assertEquals(32, render()[0][0]);
+        raster.decay(0.5);
+        Assert.assertEquals(16, render()[0][0]);
+        // A faint hit stays visible as long as it is not completely gone.
+        raster.decay(0.01);
+        Assert.assertEquals(1, render()[0][0]);
+        raster.decay(0);
+        Assert.assertEquals(0, render()[0][0]);
+
+        raster.addLine(1, 1, 1, 1, false);
+        raster.clear();
+        Assert.assertEquals(0, render()[1][1]);
+    }
+
+    @Test
+    public void testSaturation() {
+        for (int i = 0; i < 20; ++i) {
+            raster.addLine(0, 0, 1, 0, false);
+        }
+        int[][] levels = render();
+        Assert.assertEquals(255, levels[0][0]);
+        Assert.assertEquals(255, levels[0][1]);
+    }
+
+    @Test
+    public void testPalette() {
+        int[] palette = PersistenceRaster.createPalette(Color.RED);
+        Assert.assertEquals(256, palette.length);
+        Assert.assertEquals(0x00FF0000, palette[0]);
+        Assert.assertEquals(0xFFFF0000, palette[255]);
+        // A single hit (level 32) is already well visible.
+        Assert.assertTrue((palette[32] >>> 24) > 80);
+        for (int i = 1; i < palette.length; ++i) {
+            Assert.assertEquals(0xFF0000, palette[i] & 0xFFFFFF);
+            Assert.assertTrue((palette[i] >>> 24) >= (palette[i - 1] >>> 24));
+        }
+    }
+}
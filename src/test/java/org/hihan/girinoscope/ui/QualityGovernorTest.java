@@ -0,0 +1,61 @@
+package org.hihan.girinoscope.ui;
+
+import org.hihan.girinoscope.ui.QualityGovernor.Quality;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QualityGovernorTest {
+
+    private static final long BUDGET = 1000;
+
+    private final QualityGovernor governor = new QualityGovernor();
+
+    {
+        governor.setBudget(BUDGET);
+    }
+
+    @Test
+    public void testStaticRenderingIsAlwaysInHighQuality() {
+        governor.record(Quality.HIGH, 10 * BUDGET);
+        governor.record(Quality.ALIASED, 10 * BUDGET);
+        Assert.assertEquals(Quality.DRAFT, governor.choose(true));
+        Assert.assertEquals(Quality.HIGH, governor.choose(false));
+    }
+
+    @Test
+    public void testImmediateFallback() {
+        Assert.assertEquals(Quality.HIGH, governor.choose(true));
+        governor.record(Quality.HIGH, 2 * BUDGET);
+        Assert.assertEquals(Quality.ALIASED, governor.choose(true));
+        governor.record(Quality.ALIASED, 2 * BUDGET);
+        Assert.assertEquals(Quality.DRAFT, governor.choose(true));
+        // Nothing lower to fall back to.
+        governor.record(Quality.DRAFT, 2 * BUDGET);
+        Assert.assertEquals(Quality.DRAFT, governor.choose(true));
+    }
+
+    @Test
+    public void testSmoothedRecovery() {
+        governor.record(Quality.HIGH, 2 * BUDGET);
+        // 2 x 0.8^n only gets within the budget for n = 4.
+        for (int i = 0; i < 3; ++i) {
+            governor.record(Quality.HIGH, 0);
+            Assert.assertEquals(Quality.ALIASED, governor.choose(true));
+        }
+        governor.record(Quality.HIGH, 0);
+        Assert.assertEquals(Quality.HIGH, governor.choose(true));
+    }
+
+    @Test
+    public void testBetterQualityIsRetried() {
+        governor.record(Quality.HIGH, 3 * BUDGET / 2);
+        // 1.5 x 0.98^n only gets within the budget for n = 21.
+        for (int i = 0; i < 20; ++i) {
+            Assert.assertEquals(Quality.ALIASED, governor.choose(true));
+            governor.record(Quality.ALIASED, BUDGET / 2);
+        }
+        Assert.assertEquals(Quality.ALIASED, governor.choose(true));
+        governor.record(Quality.ALIASED, BUDGET / 2);
+        Assert.assertEquals(Quality.HIGH, governor.choose(true));
+    }
+}
@@ -0,0 +1,45 @@
+package org.hihan.girinoscope.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricsTest {
+
+    @Test
+    public void testHistogram() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        for (int i = 0; i < 99; ++i) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+
+        Metrics.LatencySnapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(100, snapshot.getCount());
+        Assert.assertEquals(10.0, snapshot.getMax(), 1e-9);
+        Assert.assertEquals(0.199, snapshot.getMean(), 1e-9);
+        // Percentiles are bucket upper bounds and the 10 ms sample is the 100th one.
+        Assert.assertEquals(0.128, snapshot.getMedian(), 1e-9);
+        Assert.assertEquals(0.128, snapshot.getPercentile99(), 1e-9);
+    }
+
+    @Test
+    public void testRegistration() throws Exception {
+        Metrics.register();
+        Metrics.register();
+        Metrics.DROPPED_FRAMES.add(3);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        Assert.assertTrue((Long) server.getAttribute(name, "DroppedFrames") >= 3);
+        CompositeData paintTime = (CompositeData) server.getAttribute(name, "PaintTime");
+        Assert.assertNotNull(paintTime.get("percentile99"));
+
+        server.invoke(name, "reset", null, null);
+        Assert.assertEquals(0L, server.getAttribute(name, "DroppedFrames"));
+    }
+}
@@ -0,0 +1,48 @@
+package org.hihan.girinoscope.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SpscQueueTest {
+
+    @Test
+    public void testBounds() {
+        SpscQueue<Integer> queue = new SpscQueue<>(3);
+        Assert.assertEquals(4, queue.getCapacity());
+        Assert.assertNull(queue.poll());
+        for (int i = 0; i < 4; ++i) {
+            Assert.assertTrue(queue.offer(i));
+        }
+        Assert.assertFalse(queue.offer(4));
+        Assert.assertEquals(4, queue.size());
+        Assert.assertEquals(Integer.valueOf(0), queue.poll());
+        Assert.assertTrue(queue.offer(4));
+        for (int i = 1; i <= 4; ++i) {
+            Assert.assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentOrder() throws Exception {
+        SpscQueue<Integer> queue = new SpscQueue<>(16);
+        int count = 1_000_000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; ++i) {
+                while (!queue.offer(i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+        for (int expected = 0; expected < count; ++expected) {
+            Integer value;
+            while ((value = queue.poll()) == null) {
+                Thread.yield();
+            }
+            Assert.assertEquals(expected, value.intValue());
+        }
+        producer.join();
+        Assert.assertNull(queue.poll());
+    }
+}